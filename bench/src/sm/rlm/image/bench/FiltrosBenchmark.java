@@ -0,0 +1,236 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image.bench;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sm.rlm.enums.ModoBorde;
+import sm.rlm.image.ConvolucionOp;
+import sm.rlm.image.MediaOp;
+import sm.rlm.image.MiKernelProducer;
+import sm.rlm.image.MiLookupTableProducer;
+import sm.rlm.image.ModificarTonoOp;
+import sm.rlm.image.PerfiladoOp;
+import sm.rlm.image.PopArtOp;
+import sm.rlm.image.PosterizarOp;
+import sm.rlm.image.RojoOp;
+
+/**
+ * Benchmarks JMH de los filtros de {@code sm.rlm.image}.
+ *
+ * Cada combinación de filtro, tamaño y tipo de imagen se mide por separado. La
+ * fuente y el destino se crean una vez por combinación, de modo que lo medido
+ * es solo el filtrado. Además de las operaciones por segundo, se informa del
+ * contador {@code megapixeles}, que JMH muestra como megapíxeles por segundo.
+ *
+ * Con {@code -prof gc} se obtiene también la tasa de asignación de memoria.
+ * Las ejecuciones cargan el módulo {@code jdk.incubator.vector}, de modo que
+ * {@code RojoOp} y {@code PopArtOp} usan sus recorridos vectoriales; con
+ * {@code -jvmArgsAppend -Dsm.rlm.image.vectorial=false} se miden los
+ * escalares.
+ *
+ * Los filtros que solo se aplican a imágenes en color se miden aparte, en
+ * {@link FiltrosColorBenchmark}, sin el tipo {@code BYTE_GRAY}.
+ *
+ * @author rober
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class FiltrosBenchmark {
+
+    /**
+     * Filtro a medir.
+     */
+    @Param({"rojo", "popart", "posterizar", "posterizarTramado", "tono",
+        "convolveMedia", "mediaOp", "perfilado", "perfiladoOp",
+        "convolucionPerfilado", "convolucionMirror", "abc"})
+    public String filtro;
+
+    /**
+     * Tamaño de la imagen: VGA (0,3 MP), FHD (2 MP), 12MP y 50MP.
+     */
+    @Param({"VGA", "FHD", "12MP", "50MP"})
+    public String tamano;
+
+    /**
+     * Tipo de la imagen (constante de {@code BufferedImage}).
+     */
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY"})
+    public String tipo;
+
+    private BufferedImageOp op;
+    private BufferedImage src;
+    private BufferedImage dest;
+    private double megapixelesPorOperacion;
+
+    /**
+     * Crea el filtro y las imágenes de la combinación actual.
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        int[] dimensiones = dimensiones(this.tamano);
+        this.src = crearImagen(dimensiones[0], dimensiones[1], tipoImagen(this.tipo));
+        this.op = crearFiltro(this.filtro);
+        // Mismo tipo que la fuente: createCompatibleDestImage da TYPE_CUSTOM
+        // en las imágenes de bytes, que no usan los recorridos directos
+        this.dest = new BufferedImage(this.src.getWidth(), this.src.getHeight(), this.src.getType());
+        this.megapixelesPorOperacion = (double) dimensiones[0] * dimensiones[1] / 1e6;
+    }
+
+    /**
+     * Aplica el filtro sobre la imagen fuente.
+     *
+     * @param contador Contador auxiliar de megapíxeles procesados.
+     * @return Imagen resultante, para que no se elimine el cálculo.
+     */
+    @Benchmark
+    public BufferedImage filtrar(Megapixeles contador) {
+        contador.megapixeles += this.megapixelesPorOperacion;
+        return this.op.filter(this.src, this.dest);
+    }
+
+    /**
+     * Contador de megapíxeles procesados, que JMH informa por segundo.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Megapixeles {
+
+        public double megapixeles;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            this.megapixeles = 0;
+        }
+    }
+
+    /**
+     * Crea el filtro a partir de su nombre.
+     *
+     * @param nombre Nombre del filtro.
+     * @return Filtro configurado.
+     * @throws IllegalArgumentException si el filtro no existe.
+     */
+    private static BufferedImageOp crearFiltro(String nombre) {
+        switch (nombre) {
+            case "rojo":
+                return new RojoOp(20);
+            case "popart":
+                return new PopArtOp(128, Color.YELLOW, Color.BLUE);
+            case "posterizar":
+                return new PosterizarOp(4);
+            case "posterizarTramado":
+                return new PosterizarOp(4, true);
+            case "tono":
+                return new ModificarTonoOp(Color.RED, 30, 120);
+            case "convolveMedia":
+                return MiKernelProducer.createConvolveOpMedia(5);
+            case "mediaOp":
+                return MiKernelProducer.createKernelOp(MiKernelProducer.TYPE_MEDIA_5x5);
+            case "perfilado":
+                return MiKernelProducer.createConvolveOpPerfilado(1.0f);
+            case "perfiladoOp":
+                return new PerfiladoOp(1.0f);
+            case "convolucionPerfilado":
+                return new ConvolucionOp(MiKernelProducer.createKernelPerfilado(1.0f));
+            case "convolucionMirror":
+                return new ConvolucionOp(MiKernelProducer.createKernelPerfilado(1.0f), ModoBorde.MIRROR);
+            case "abc":
+                return MiLookupTableProducer.createLookupOpABC(20, 140, 235);
+            default:
+                throw new IllegalArgumentException("Filtro desconocido: " + nombre);
+        }
+    }
+
+    /**
+     * Obtiene el ancho y alto correspondientes a un tamaño.
+     *
+     * @param tamano Nombre del tamaño.
+     * @return Array con ancho y alto.
+     */
+    static int[] dimensiones(String tamano) {
+        switch (tamano) {
+            case "VGA":
+                return new int[]{640, 480};
+            case "FHD":
+                return new int[]{1920, 1080};
+            case "12MP":
+                return new int[]{4000, 3000};
+            case "50MP":
+                return new int[]{8192, 6144};
+            default:
+                throw new IllegalArgumentException("Tamaño desconocido: " + tamano);
+        }
+    }
+
+    /**
+     * Obtiene la constante de {@code BufferedImage} de un tipo de imagen.
+     *
+     * @param tipo Nombre del tipo.
+     * @return Tipo de imagen.
+     */
+    static int tipoImagen(String tipo) {
+        switch (tipo) {
+            case "INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "INT_ARGB":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY":
+                return BufferedImage.TYPE_BYTE_GRAY;
+            default:
+                throw new IllegalArgumentException("Tipo desconocido: " + tipo);
+        }
+    }
+
+    /**
+     * Crea una imagen con contenido pseudoaleatorio reproducible: un
+     * degradado con ruido, para que los filtros con umbrales recorran todas
+     * sus ramas.
+     *
+     * @param ancho Ancho de la imagen.
+     * @param alto Alto de la imagen.
+     * @param tipo Tipo de la imagen.
+     * @return Imagen creada.
+     */
+    static BufferedImage crearImagen(int ancho, int alto, int tipo) {
+        BufferedImage img = new BufferedImage(ancho, alto, tipo);
+        Random aleatorio = new Random(42);
+        int[] fila = new int[ancho];
+
+        for (int y = 0; y < alto; y++) {
+            for (int x = 0; x < ancho; x++) {
+                int base = (x * 255 / ancho + y * 255 / alto) / 2;
+                int r = Math.min(255, base + aleatorio.nextInt(64));
+                int g = Math.min(255, base / 2 + aleatorio.nextInt(64));
+                int b = Math.min(255, 255 - base + aleatorio.nextInt(32));
+                fila[x] = (0xC0 + aleatorio.nextInt(64)) << 24 | (r << 16) | (g << 8) | b;
+            }
+            img.setRGB(0, y, ancho, 1, fila, 0, ancho);
+        }
+        return img;
+    }
+}
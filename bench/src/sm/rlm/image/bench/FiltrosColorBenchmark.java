@@ -0,0 +1,170 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image.bench;
+
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BandCombineOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sm.rlm.image.MatrizColorOp;
+import sm.rlm.image.MiLookupTableProducer;
+
+/**
+ * Benchmarks JMH de los filtros sepia, que mezclan o transforman los canales
+ * de color y por ello solo se miden sobre imágenes en color.
+ *
+ * Las tres variantes aplican el sepia de formas distintas y se pueden
+ * comparar directamente: {@code sepia} (tabla por canal de
+ * {@link MiLookupTableProducer}), {@code matrizSepia} ({@link MatrizColorOp})
+ * y {@code bandCombineSepia} ({@code BandCombineOp} sobre los rasters, con la
+ * misma matriz). Los tamaños, las imágenes y el contador {@code megapixeles}
+ * son los de {@link FiltrosBenchmark}.
+ *
+ * @author rober
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class FiltrosColorBenchmark {
+
+    /**
+     * Filtro a medir.
+     */
+    @Param({"sepia", "matrizSepia", "bandCombineSepia"})
+    public String filtro;
+
+    /**
+     * Tamaño de la imagen: VGA (0,3 MP), FHD (2 MP), 12MP y 50MP.
+     */
+    @Param({"VGA", "FHD", "12MP", "50MP"})
+    public String tamano;
+
+    /**
+     * Tipo de la imagen (constante de {@code BufferedImage}), solo en color.
+     */
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR"})
+    public String tipo;
+
+    private BufferedImageOp op;
+    private BufferedImage src;
+    private BufferedImage dest;
+    private double megapixelesPorOperacion;
+
+    /**
+     * Crea el filtro y las imágenes de la combinación actual.
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        int[] dimensiones = FiltrosBenchmark.dimensiones(this.tamano);
+        this.src = FiltrosBenchmark.crearImagen(dimensiones[0], dimensiones[1],
+                FiltrosBenchmark.tipoImagen(this.tipo));
+        this.op = crearFiltro(this.filtro, this.src.getRaster().getNumBands());
+        this.dest = this.op.createCompatibleDestImage(this.src, null);
+        this.megapixelesPorOperacion = (double) dimensiones[0] * dimensiones[1] / 1e6;
+    }
+
+    /**
+     * Aplica el filtro sobre la imagen fuente.
+     *
+     * @param contador Contador auxiliar de megapíxeles procesados.
+     * @return Imagen resultante, para que no se elimine el cálculo.
+     */
+    @Benchmark
+    public BufferedImage filtrar(FiltrosBenchmark.Megapixeles contador) {
+        contador.megapixeles += this.megapixelesPorOperacion;
+        return this.op.filter(this.src, this.dest);
+    }
+
+    /**
+     * Crea el filtro a partir de su nombre.
+     *
+     * @param nombre Nombre del filtro.
+     * @param numBandas Número de bandas de la imagen (3 o 4).
+     * @return Filtro configurado.
+     * @throws IllegalArgumentException si el filtro no existe.
+     */
+    private static BufferedImageOp crearFiltro(String nombre, int numBandas) {
+        switch (nombre) {
+            case "sepia":
+                return MiLookupTableProducer.createSepiaLookupOp();
+            case "matrizSepia":
+                return MatrizColorOp.crearSepia();
+            case "bandCombineSepia":
+                return new BandCombineImagenOp(MatrizColorOp.crearSepia().getMatriz(), numBandas);
+            default:
+                throw new IllegalArgumentException("Filtro desconocido: " + nombre);
+        }
+    }
+
+    /**
+     * Adaptador que aplica un {@code BandCombineOp} sobre los rasters de las
+     * imágenes, para compararlo con {@link MatrizColorOp}. Si la imagen tiene
+     * alfa, la matriz se amplía para copiarlo sin cambios.
+     */
+    private static class BandCombineImagenOp implements BufferedImageOp {
+
+        private final BandCombineOp op;
+
+        BandCombineImagenOp(float[][] matriz, int numBandas) {
+            float[][] m = new float[numBandas][numBandas + 1];
+            for (int i = 0; i < 3; i++) {
+                System.arraycopy(matriz[i], 0, m[i], 0, 3);
+                m[i][numBandas] = matriz[i][3];
+            }
+            if (numBandas > 3) {
+                m[3][3] = 1;
+            }
+            this.op = new BandCombineOp(m, null);
+        }
+
+        @Override
+        public BufferedImage filter(BufferedImage src, BufferedImage dest) {
+            if (dest == null) {
+                dest = createCompatibleDestImage(src, null);
+            }
+            this.op.filter(src.getRaster(), dest.getRaster());
+            return dest;
+        }
+
+        @Override
+        public Rectangle2D getBounds2D(BufferedImage src) {
+            return src.getRaster().getBounds();
+        }
+
+        @Override
+        public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
+            return new BufferedImage(src.getWidth(), src.getHeight(), src.getType());
+        }
+
+        @Override
+        public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
+            return this.op.getPoint2D(srcPt, dstPt);
+        }
+
+        @Override
+        public RenderingHints getRenderingHints() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Enum.java to edit this template
+ */
+package sm.rlm.enums;
+
+/**
+ * Enumeración que representa las formas de obtener los píxeles que quedan
+ * fuera de la imagen en las operaciones de vecindad (convoluciones, medias).
+ *
+ * - {@code CLAMP}: Se repite el píxel del borde más cercano (... 0 0 | 0 1 2).
+ * - {@code MIRROR}: Se refleja la imagen en el borde, repitiendo el píxel del
+ *   borde (... 1 0 | 0 1 2).
+ * - {@code WRAP}: La imagen se repite de forma cíclica, tomando los píxeles
+ *   del borde opuesto (... n-2 n-1 | 0 1 2).
+ *
+ * A diferencia de {@code ConvolveOp}, que deja un marco a cero o sin procesar,
+ * con cualquiera de estos modos se calcula también el borde de la imagen.
+ *
+ * @author rober
+ */
+public enum ModoBorde {
+    CLAMP {
+        @Override
+        public int ajustar(int i, int n) {
+            return (i < 0) ? 0 : (i >= n ? n - 1 : i);
+        }
+    },
+    MIRROR {
+        @Override
+        public int ajustar(int i, int n) {
+            int m = Math.floorMod(i, 2 * n);
+            return (m < n) ? m : 2 * n - 1 - m;
+        }
+    },
+    WRAP {
+        @Override
+        public int ajustar(int i, int n) {
+            return Math.floorMod(i, n);
+        }
+    };
+
+    /**
+     * Ajusta una coordenada al rango válido según el modo de borde.
+     *
+     * @param i Coordenada, que puede quedar fuera de la imagen.
+     * @param n Tamaño de la dimensión (ancho o alto de la imagen).
+     * @return Coordenada equivalente dentro de [0, n).
+     */
+    public abstract int ajustar(int i, int n);
+}
@@ -0,0 +1,198 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.graficos;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * Dibuja listas de figuras agrupando las consecutivas que tienen el mismo
+ * estilo, de modo que el estado del contexto gráfico (color, trazo,
+ * transparencia y pistas de renderizado) solo se cambia al pasar de un estilo
+ * a otro. {@link MiShape#draw(Graphics2D)} establece los cuatro valores en
+ * cada figura y {@code setRenderingHints} sustituye además todo el mapa de
+ * pistas, lo que domina el coste cuando se dibujan muchas figuras pequeñas.
+ *
+ * Las figuras se dibujan en el orden de la lista, por lo que el resultado es
+ * el mismo que llamando a {@code draw} en cada una. Solo se agrupan las
+ * figuras consecutivas: dos figuras del mismo estilo separadas por otra de
+ * distinto estilo no se reordenan.
+ *
+ * Solo se agrupan las figuras cuya clase no sobrescribe
+ * {@link MiShape#draw(Graphics2D)}, ya que el dibujo por lotes no lo llama.
+ * Las demás se dibujan con su propio {@code draw}, y la figura siguiente
+ * vuelve a establecer su estilo.
+ *
+ * Opcionalmente, las figuras de un grupo que no están rellenas, ni
+ * seleccionadas, ni son transparentes se fusionan en un único
+ * {@link Path2D} y se dibujan con una sola llamada. Donde estas figuras se
+ * solapan, los bordes alisados pueden variar ligeramente respecto a
+ * dibujarlas por separado, ya que se dibuja la unión de sus trazos.
+ *
+ * @author rober
+ */
+public class DibujoPorLotes {
+
+    /**
+     * Indica, para cada clase de figura, si usa el
+     * {@link MiShape#draw(Graphics2D)} de {@link MiShape}. Se calcula una
+     * sola vez por clase.
+     */
+    private static final ClassValue<Boolean> DRAW_ORIGINAL = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> clase) {
+            try {
+                return clase.getMethod("draw", Graphics2D.class).getDeclaringClass() == MiShape.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * Indica si se fusionan en un único trazado las figuras de un grupo.
+     */
+    private boolean fusionarTrazos;
+
+    /**
+     * Número de cambios de estilo en el último dibujo.
+     */
+    private int numCambiosEstilo = 0;
+
+    /**
+     * Crea un dibujo por lotes que no fusiona los trazados.
+     */
+    public DibujoPorLotes() {
+        this(false);
+    }
+
+    /**
+     * Crea un dibujo por lotes.
+     *
+     * @param fusionarTrazos true para fusionar en un único trazado las
+     * figuras de un grupo que lo permitan.
+     */
+    public DibujoPorLotes(boolean fusionarTrazos) {
+        this.fusionarTrazos = fusionarTrazos;
+    }
+
+    /**
+     * Dibuja una lista de figuras en orden, omitiendo las que quedan fuera de
+     * una zona.
+     *
+     * @param g2d el contexto gráfico 2D.
+     * @param figuras figuras a dibujar, de la inferior a la superior.
+     * @param zona zona a dibujar, o null para dibujar todas las figuras.
+     */
+    public void dibujar(Graphics2D g2d, List<? extends MiShape> figuras, Rectangle zona) {
+        // Figura cuyo estilo está establecido en el contexto, o null si el
+        // estado es desconocido
+        MiShape estilo = null;
+        Path2D lote = null;
+        this.numCambiosEstilo = 0;
+
+        for (MiShape s : figuras) {
+            if (zona != null && !zona.intersects(s.getAreaDibujo())) {
+                continue;
+            }
+
+            if (!DRAW_ORIGINAL.get(s.getClass())) {
+                // Dibuja a su manera y puede dejar cualquier estado en el contexto
+                dibujarLote(g2d, lote);
+                lote = null;
+                s.draw(g2d);
+                estilo = null;
+                continue;
+            }
+
+            if (estilo == null || !s.mismoEstilo(estilo)) {
+                dibujarLote(g2d, lote);
+                lote = null;
+                s.aplicarEstilo(g2d);
+                estilo = s;
+                this.numCambiosEstilo++;
+            }
+
+            Shape geometria = this.fusionarTrazos && esFusionable(s) ? s.getGeometria() : null;
+            if (geometria != null) {
+                if (lote == null) {
+                    lote = new Path2D.Double();
+                }
+                lote.append(geometria, false);
+                continue;
+            }
+
+            dibujarLote(g2d, lote);
+            lote = null;
+            s.dibujarGeometria(g2d);
+            if (s.getSelected()) {
+                // El marco de selección cambia el color y el trazo
+                s.drawBounds(g2d);
+                estilo = null;
+            }
+        }
+
+        dibujarLote(g2d, lote);
+    }
+
+    /**
+     * Indica si una figura se puede fusionar con las demás de su grupo: su
+     * dibujo debe ser solo el trazo de su geometría y opaco, para que dibujar
+     * la unión de varios trazos dé el mismo resultado que dibujarlos uno a
+     * uno.
+     *
+     * @param s figura a comprobar.
+     * @return true si se puede fusionar.
+     */
+    private static boolean esFusionable(MiShape s) {
+        if (s.getSelected() || Boolean.TRUE.equals(s.getTransparente())) {
+            return false;
+        }
+        return !(s instanceof MiShapeRellenable) || !Boolean.TRUE.equals(((MiShapeRellenable) s).getRellena());
+    }
+
+    /**
+     * Dibuja el trazado acumulado de un grupo, si lo hay.
+     *
+     * @param g2d el contexto gráfico 2D, con el estilo del grupo.
+     * @param lote trazado acumulado, o null.
+     */
+    private static void dibujarLote(Graphics2D g2d, Path2D lote) {
+        if (lote != null) {
+            g2d.draw(lote);
+        }
+    }
+
+    /**
+     * Indica si se fusionan en un único trazado las figuras de un grupo.
+     *
+     * @return true si se fusionan los trazados.
+     */
+    public boolean getFusionarTrazos() {
+        return fusionarTrazos;
+    }
+
+    /**
+     * Establece si se fusionan en un único trazado las figuras de un grupo.
+     *
+     * @param fusionarTrazos true para fusionar los trazados.
+     */
+    public void setFusionarTrazos(boolean fusionarTrazos) {
+        this.fusionarTrazos = fusionarTrazos;
+    }
+
+    /**
+     * Obtiene el número de veces que se cambió el estilo del contexto
+     * gráfico en el último dibujo, para medir la eficacia de la agrupación.
+     *
+     * @return número de cambios de estilo.
+     */
+    public int getNumCambiosEstilo() {
+        return numCambiosEstilo;
+    }
+}
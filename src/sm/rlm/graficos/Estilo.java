@@ -0,0 +1,330 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.graficos;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estilo de dibujo de una forma: color, grosor, transparencia y alisado,
+ * junto con los objetos de Java2D que se derivan de ellos (trazo, composición
+ * y pistas de renderizado).
+ *
+ * Los estilos son inmutables y compartidos: {@link #obtener} devuelve siempre
+ * la misma instancia para los mismos valores, de modo que todas las formas
+ * con el mismo estilo comparten un único trazo, composición y mapa de pistas,
+ * y dos estilos se pueden comparar con {@code ==}.
+ *
+ * El registro solo guarda referencias débiles a los estilos, de modo que los
+ * que ya no usa ninguna forma se liberan y el registro no crece sin límite
+ * aunque se usen muchos colores distintos. Mientras un estilo está en uso,
+ * {@link #obtener} sigue devolviendo esa misma instancia.
+ *
+ * @author rober
+ */
+public final class Estilo {
+
+    /**
+     * Estilos creados, indexados por sus valores, con referencias débiles.
+     */
+    private static final ConcurrentHashMap<Clave, Referencia> REGISTRO = new ConcurrentHashMap<>();
+
+    /**
+     * Cola donde el recolector deja las referencias de los estilos liberados,
+     * para quitarlas del registro.
+     */
+    private static final ReferenceQueue<Estilo> LIBERADOS = new ReferenceQueue<>();
+
+    /**
+     * Estilo por defecto: negro, grosor 1, opaco y sin alisado.
+     */
+    public static final Estilo POR_DEFECTO = obtener(Color.BLACK, 1, false, false);
+
+    /**
+     * Color de la forma, utilizado para el contorno y el relleno.
+     */
+    private final Color color;
+
+    /**
+     * Grosor del trazo.
+     */
+    private final int grosor;
+
+    /**
+     * Indica si la forma es transparente.
+     */
+    private final boolean transparente;
+
+    /**
+     * Indica si se aplica alisado al dibujar la forma.
+     */
+    private final boolean alisada;
+
+    /**
+     * Trazo con el grosor del estilo.
+     */
+    private final Stroke stroke;
+
+    /**
+     * Composición con la transparencia del estilo.
+     */
+    private final Composite comp;
+
+    /**
+     * Pistas de renderizado con el alisado del estilo.
+     */
+    private final RenderingHints render;
+
+    /**
+     * Crea un estilo. Solo se usa desde {@link #obtener}.
+     *
+     * @param color el color de la forma.
+     * @param grosor el grosor del trazo.
+     * @param transparente true si la forma es transparente.
+     * @param alisada true si se aplica alisado en el dibujo.
+     */
+    private Estilo(Color color, int grosor, boolean transparente, boolean alisada) {
+        this.color = color;
+        this.grosor = grosor;
+        this.transparente = transparente;
+        this.alisada = alisada;
+
+        this.stroke = new BasicStroke(grosor);
+        this.comp = transparente
+                ? AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f)
+                : AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f);
+        this.render = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+                alisada ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+
+    /**
+     * Obtiene el estilo compartido con los valores indicados, creándolo si
+     * es la primera vez que se pide.
+     *
+     * @param color el color de la forma.
+     * @param grosor el grosor del trazo.
+     * @param transparente true si la forma es transparente.
+     * @param alisada true si se aplica alisado en el dibujo.
+     * @return el estilo compartido.
+     */
+    public static Estilo obtener(Color color, int grosor, boolean transparente, boolean alisada) {
+        purgar();
+        Clave clave = new Clave(color, grosor, transparente, alisada);
+
+        Referencia ref = REGISTRO.get(clave);
+        Estilo estilo = (ref != null) ? ref.get() : null;
+        if (estilo != null) {
+            return estilo;
+        }
+
+        // Se crea dentro de compute para que dos hilos no creen dos
+        // instancias; el array mantiene viva la nueva hasta devolverla
+        Estilo[] resultado = new Estilo[1];
+        REGISTRO.compute(clave, (k, actual) -> {
+            Estilo e = (actual != null) ? actual.get() : null;
+            if (e == null) {
+                e = new Estilo(color, grosor, transparente, alisada);
+                actual = new Referencia(k, e);
+            }
+            resultado[0] = e;
+            return actual;
+        });
+        return resultado[0];
+    }
+
+    /**
+     * Quita del registro las entradas de los estilos ya liberados.
+     */
+    private static void purgar() {
+        Referencia ref;
+        while ((ref = (Referencia) LIBERADOS.poll()) != null) {
+            REGISTRO.remove(ref.clave, ref);
+        }
+    }
+
+    /**
+     * Obtiene el estilo compartido igual a este pero con otro color.
+     *
+     * @param color el nuevo color.
+     * @return el estilo compartido.
+     */
+    public Estilo conColor(Color color) {
+        return obtener(color, this.grosor, this.transparente, this.alisada);
+    }
+
+    /**
+     * Obtiene el estilo compartido igual a este pero con otro grosor.
+     *
+     * @param grosor el nuevo grosor.
+     * @return el estilo compartido.
+     */
+    public Estilo conGrosor(int grosor) {
+        return obtener(this.color, grosor, this.transparente, this.alisada);
+    }
+
+    /**
+     * Obtiene el estilo compartido igual a este pero con otra transparencia.
+     *
+     * @param transparente true si la forma es transparente.
+     * @return el estilo compartido.
+     */
+    public Estilo conTransparencia(boolean transparente) {
+        return obtener(this.color, this.grosor, transparente, this.alisada);
+    }
+
+    /**
+     * Obtiene el estilo compartido igual a este pero con otro alisado.
+     *
+     * @param alisada true si se aplica alisado en el dibujo.
+     * @return el estilo compartido.
+     */
+    public Estilo conAlisado(boolean alisada) {
+        return obtener(this.color, this.grosor, this.transparente, alisada);
+    }
+
+    /**
+     * Obtiene el número de estilos del registro. Puede incluir estilos que
+     * ya no se usan pero que el recolector aún no ha liberado.
+     *
+     * @return número de estilos del registro.
+     */
+    public static int getNumEstilos() {
+        purgar();
+        return REGISTRO.size();
+    }
+
+    /**
+     * Obtiene el color.
+     *
+     * @return el color.
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Obtiene el grosor del trazo.
+     *
+     * @return el grosor.
+     */
+    public int getGrosor() {
+        return grosor;
+    }
+
+    /**
+     * Indica si el estilo es transparente.
+     *
+     * @return true si es transparente.
+     */
+    public boolean isTransparente() {
+        return transparente;
+    }
+
+    /**
+     * Indica si el estilo aplica alisado.
+     *
+     * @return true si aplica alisado.
+     */
+    public boolean isAlisada() {
+        return alisada;
+    }
+
+    /**
+     * Obtiene el trazo compartido.
+     *
+     * @return el trazo.
+     */
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    /**
+     * Obtiene la composición compartida.
+     *
+     * @return la composición.
+     */
+    public Composite getComp() {
+        return comp;
+    }
+
+    /**
+     * Obtiene las pistas de renderizado. Como el estilo es compartido, se
+     * devuelve una copia.
+     *
+     * @return copia de las pistas de renderizado.
+     */
+    public RenderingHints getRender() {
+        return (RenderingHints) render.clone();
+    }
+
+    /**
+     * Obtiene las pistas de renderizado compartidas, sin copiarlas, para
+     * establecerlas en un contexto gráfico. No se deben modificar.
+     *
+     * @return las pistas de renderizado compartidas.
+     */
+    RenderingHints getRenderCompartido() {
+        return render;
+    }
+
+    /**
+     * Referencia débil a un estilo del registro, que recuerda su clave para
+     * poder quitarla cuando el estilo se libera.
+     */
+    private static final class Referencia extends WeakReference<Estilo> {
+
+        private final Clave clave;
+
+        Referencia(Clave clave, Estilo estilo) {
+            super(estilo, LIBERADOS);
+            this.clave = clave;
+        }
+    }
+
+    /**
+     * Valores que identifican un estilo en el registro, sin los objetos de
+     * Java2D que se derivan de ellos.
+     */
+    private static final class Clave {
+
+        private final Color color;
+        private final int grosor;
+        private final boolean transparente;
+        private final boolean alisada;
+
+        Clave(Color color, int grosor, boolean transparente, boolean alisada) {
+            this.color = color;
+            this.grosor = grosor;
+            this.transparente = transparente;
+            this.alisada = alisada;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Clave)) {
+                return false;
+            }
+            Clave otra = (Clave) obj;
+            return this.grosor == otra.grosor && this.transparente == otra.transparente
+                    && this.alisada == otra.alisada && Objects.equals(this.color, otra.color);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(color, grosor, transparente, alisada);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.graficos;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice espacial de figuras basado en una rejilla uniforme, para localizar
+ * rápidamente la figura que hay bajo un punto.
+ *
+ * Cada figura se registra en las celdas de la rejilla que cubre su área de
+ * dibujo ({@link MiShape#getAreaDibujo()}), que contiene siempre la zona en la
+ * que {@link MiShape#contains(Point2D)} puede ser cierto. Una consulta solo
+ * comprueba las figuras de la celda del punto, de modo que su coste depende
+ * del número de figuras que se solapan en esa zona y no del total.
+ *
+ * El índice conserva el orden de apilamiento: cada figura recibe un número de
+ * orden creciente al insertarla (las últimas se dibujan encima) y las figuras
+ * de cada celda se guardan ordenadas por él. Las figuras que cubren demasiadas
+ * celdas se guardan aparte y se comprueban en todas las consultas.
+ *
+ * Cuando una figura cambia de posición o de forma, se debe llamar a
+ * {@link #actualizar(MiShape)} para que el índice refleje sus nuevos límites.
+ *
+ * @author rober
+ */
+public class IndiceEspacial {
+
+    /**
+     * Lado por defecto de las celdas de la rejilla, en píxeles.
+     */
+    public static final int TAMANO_CELDA = 64;
+
+    /**
+     * Número máximo de celdas en que se registra una figura. Las figuras más
+     * grandes se guardan en la lista de figuras grandes.
+     */
+    private static final int MAX_CELDAS = 256;
+
+    /**
+     * Datos de una figura registrada en el índice.
+     */
+    private static class Entrada {
+
+        /**
+         * Figura registrada.
+         */
+        final MiShape figura;
+
+        /**
+         * Orden de apilamiento de la figura (mayor = más arriba).
+         */
+        final long orden;
+
+        /**
+         * Área de la figura cuando se registró.
+         */
+        Rectangle area;
+
+        /**
+         * Rango de celdas cubiertas, o null si es una figura grande.
+         */
+        Rectangle celdas;
+
+        Entrada(MiShape figura, long orden) {
+            this.figura = figura;
+            this.orden = orden;
+        }
+    }
+
+    /**
+     * Lado de las celdas de la rejilla.
+     */
+    private final int tamanoCelda;
+
+    /**
+     * Figuras de cada celda, ordenadas por orden de apilamiento. La clave
+     * combina las coordenadas de la celda (véase {@link #clave(int, int)}).
+     */
+    private final Map<Long, List<Entrada>> celdas = new HashMap<>();
+
+    /**
+     * Figuras que cubren más de {@link #MAX_CELDAS} celdas, ordenadas por
+     * orden de apilamiento.
+     */
+    private final List<Entrada> grandes = new ArrayList<>();
+
+    /**
+     * Entrada de cada figura registrada.
+     */
+    private final Map<MiShape, Entrada> entradas = new IdentityHashMap<>();
+
+    /**
+     * Siguiente número de orden de apilamiento.
+     */
+    private long siguienteOrden = 0;
+
+    /**
+     * Crea un índice con celdas del tamaño por defecto.
+     */
+    public IndiceEspacial() {
+        this(TAMANO_CELDA);
+    }
+
+    /**
+     * Crea un índice con celdas del tamaño indicado.
+     *
+     * @param tamanoCelda Lado de las celdas, en píxeles.
+     * @throws IllegalArgumentException si el tamaño es menor que 1.
+     */
+    public IndiceEspacial(int tamanoCelda) {
+        if (tamanoCelda < 1) {
+            throw new IllegalArgumentException("El tamaño de celda debe ser al menos 1");
+        }
+        this.tamanoCelda = tamanoCelda;
+    }
+
+    /**
+     * Añade una figura al índice, por encima de todas las anteriores. Si ya
+     * estaba, solo se actualizan sus límites.
+     *
+     * @param figura Figura a añadir.
+     */
+    public void insertar(MiShape figura) {
+        if (this.entradas.containsKey(figura)) {
+            actualizar(figura);
+            return;
+        }
+        Entrada entrada = new Entrada(figura, this.siguienteOrden++);
+        this.entradas.put(figura, entrada);
+        registrar(entrada);
+    }
+
+    /**
+     * Elimina una figura del índice.
+     *
+     * @param figura Figura a eliminar.
+     * @return true si la figura estaba en el índice.
+     */
+    public boolean eliminar(MiShape figura) {
+        Entrada entrada = this.entradas.remove(figura);
+        if (entrada == null) {
+            return false;
+        }
+        desregistrar(entrada);
+        return true;
+    }
+
+    /**
+     * Actualiza los límites de una figura tras moverla o modificarla,
+     * conservando su orden de apilamiento. No hace nada si la figura no está
+     * en el índice.
+     *
+     * @param figura Figura modificada.
+     */
+    public void actualizar(MiShape figura) {
+        Entrada entrada = this.entradas.get(figura);
+        if (entrada == null) {
+            return;
+        }
+
+        Rectangle area = figura.getAreaDibujo();
+        Rectangle celdasNuevas = calcularCeldas(area);
+        if (celdasNuevas != null && celdasNuevas.equals(entrada.celdas)) {
+            // Sigue en las mismas celdas: basta con guardar el área nueva
+            entrada.area = area;
+        } else {
+            desregistrar(entrada);
+            registrar(entrada);
+        }
+    }
+
+    /**
+     * Obtiene la figura situada más arriba que contiene un punto.
+     *
+     * @param p Punto a comprobar.
+     * @return la figura superior que contiene el punto, o null si no hay
+     * ninguna.
+     */
+    public MiShape getSuperior(Point2D p) {
+        Entrada mejor = null;
+
+        List<Entrada> celda = this.celdas.get(clave(celda(p.getX()), celda(p.getY())));
+        if (celda != null) {
+            // Se recorre de arriba abajo y basta con la primera que lo contiene
+            for (int i = celda.size() - 1; i >= 0; i--) {
+                Entrada e = celda.get(i);
+                if (e.area.contains(p) && e.figura.contains(p)) {
+                    mejor = e;
+                    break;
+                }
+            }
+        }
+
+        for (int i = this.grandes.size() - 1; i >= 0; i--) {
+            Entrada e = this.grandes.get(i);
+            if (mejor != null && e.orden < mejor.orden) {
+                break;
+            }
+            if (e.area.contains(p) && e.figura.contains(p)) {
+                mejor = e;
+                break;
+            }
+        }
+
+        return (mejor != null) ? mejor.figura : null;
+    }
+
+    /**
+     * Indica si una figura está en el índice.
+     *
+     * @param figura Figura a comprobar.
+     * @return true si la figura está registrada.
+     */
+    public boolean contiene(MiShape figura) {
+        return this.entradas.containsKey(figura);
+    }
+
+    /**
+     * Obtiene el número de figuras del índice.
+     *
+     * @return número de figuras registradas.
+     */
+    public int getNumFiguras() {
+        return this.entradas.size();
+    }
+
+    /**
+     * Elimina todas las figuras del índice.
+     */
+    public void limpiar() {
+        this.celdas.clear();
+        this.grandes.clear();
+        this.entradas.clear();
+    }
+
+    /**
+     * Registra una entrada en las celdas que cubre su área actual.
+     *
+     * @param entrada Entrada a registrar.
+     */
+    private void registrar(Entrada entrada) {
+        entrada.area = entrada.figura.getAreaDibujo();
+        entrada.celdas = calcularCeldas(entrada.area);
+
+        if (entrada.celdas == null) {
+            insertarOrdenada(this.grandes, entrada);
+            return;
+        }
+        Rectangle c = entrada.celdas;
+        for (int cy = c.y; cy < c.y + c.height; cy++) {
+            for (int cx = c.x; cx < c.x + c.width; cx++) {
+                insertarOrdenada(this.celdas.computeIfAbsent(clave(cx, cy), k -> new ArrayList<>()), entrada);
+            }
+        }
+    }
+
+    /**
+     * Quita una entrada de todas las celdas en que está registrada.
+     *
+     * @param entrada Entrada a quitar.
+     */
+    private void desregistrar(Entrada entrada) {
+        if (entrada.celdas == null) {
+            this.grandes.remove(entrada);
+            return;
+        }
+        Rectangle c = entrada.celdas;
+        for (int cy = c.y; cy < c.y + c.height; cy++) {
+            for (int cx = c.x; cx < c.x + c.width; cx++) {
+                long k = clave(cx, cy);
+                List<Entrada> celda = this.celdas.get(k);
+                if (celda != null) {
+                    celda.remove(entrada);
+                    if (celda.isEmpty()) {
+                        this.celdas.remove(k);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserta una entrada en una lista manteniendo el orden de apilamiento.
+     * Las figuras nuevas quedan al final sin recorrer la lista.
+     *
+     * @param lista Lista ordenada por orden de apilamiento.
+     * @param entrada Entrada a insertar.
+     */
+    private static void insertarOrdenada(List<Entrada> lista, Entrada entrada) {
+        int i = lista.size();
+        while (i > 0 && lista.get(i - 1).orden > entrada.orden) {
+            i--;
+        }
+        lista.add(i, entrada);
+    }
+
+    /**
+     * Calcula el rango de celdas que cubre un área.
+     *
+     * @param area Área en píxeles.
+     * @return rango de celdas (x, y, ancho y alto en celdas), o null si cubre
+     * más de {@link #MAX_CELDAS}.
+     */
+    private Rectangle calcularCeldas(Rectangle area) {
+        int cx0 = celda(area.x);
+        int cy0 = celda(area.y);
+        long ancho = celda((double) area.x + area.width) - cx0 + 1;
+        long alto = celda((double) area.y + area.height) - cy0 + 1;
+        if (ancho * alto > MAX_CELDAS) {
+            return null;
+        }
+        return new Rectangle(cx0, cy0, (int) ancho, (int) alto);
+    }
+
+    /**
+     * Obtiene la celda de la rejilla que contiene una coordenada.
+     *
+     * @param v Coordenada en píxeles.
+     * @return índice de la celda.
+     */
+    private int celda(double v) {
+        return (int) Math.floor(v / this.tamanoCelda);
+    }
+
+    /**
+     * Combina las coordenadas de una celda en una clave.
+     *
+     * @param cx Columna de la celda.
+     * @param cy Fila de la celda.
+     * @return clave de la celda.
+     */
+    private static long clave(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -6,6 +6,7 @@ package sm.rlm.graficos;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.QuadCurve2D;
 import java.awt.geom.Rectangle2D;
@@ -148,4 +149,14 @@ public class MiCurva extends MiShape{
     public void setpControl(Boolean pControl) {
         this.pControl = pControl;
     }
+
+    /**
+     * Obtiene la geometría de la curva.
+     *
+     * @return la forma geométrica que se dibuja.
+     */
+    @Override
+    protected Shape getGeometria() {
+        return this.geomCurva;
+    }
 }
@@ -6,6 +6,7 @@ package sm.rlm.graficos;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -121,4 +122,14 @@ public class MiElipse extends MiShapeRellenable{
     protected Rectangle2D getBounds() {
         return this.geomElipse.getBounds2D();
     }
+
+    /**
+     * Obtiene la geometría de la elipse.
+     *
+     * @return la forma geométrica que se dibuja.
+     */
+    @Override
+    protected Shape getGeometria() {
+        return this.geomElipse;
+    }
 }
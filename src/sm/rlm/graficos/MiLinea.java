@@ -6,6 +6,7 @@ package sm.rlm.graficos;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -126,6 +127,16 @@ public class MiLinea extends MiShape{
         if (this.geomLinea.getP1().equals(this.geomLinea.getP2())) {
             return this.geomLinea.getP1().distance(p) <= 2.0;
         }
-        return this.geomLinea.ptLineDist(p) <= 2.0;
+        return this.geomLinea.ptSegDist(p) <= 2.0;
+    }
+
+    /**
+     * Obtiene la geometría de la línea.
+     *
+     * @return la forma geométrica que se dibuja.
+     */
+    @Override
+    protected Shape getGeometria() {
+        return this.geomLinea;
     }
 }
@@ -6,6 +6,7 @@ package sm.rlm.graficos;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 
@@ -123,4 +124,14 @@ public class MiRectangulo extends MiShapeRellenable{
     protected Rectangle2D getBounds() {
         return this.geomRectangulo.getBounds2D();
     }
+
+    /**
+     * Obtiene la geometría de el rectángulo.
+     *
+     * @return la forma geométrica que se dibuja.
+     */
+    @Override
+    protected Shape getGeometria() {
+        return this.geomRectangulo;
+    }
 }
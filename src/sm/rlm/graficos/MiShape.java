@@ -4,12 +4,13 @@
  */
 package sm.rlm.graficos;
 
-import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -29,45 +30,28 @@ import java.util.List;
 public abstract class MiShape {
 
     /**
-     * Color de la forma utilizada para el contorno o relleno.
+     * Estilo de la forma (color, grosor, transparencia y alisado), compartido
+     * con las demás formas del mismo estilo.
      */
-    protected Color color;
+    private Estilo estilo = Estilo.POR_DEFECTO;
 
     /**
-     * Trazo de la forma, define el grosor y estilo de línea.
-     */
-    protected Stroke stroke;
-    
-    /**
-     * Grosor del trazo de la forma.
-     */
-    private int grosor;
-
-    /**
-     * Composición de transparencia de la forma.
-     */
-    protected Composite comp;
-    
-    /**
-     * Indica si la forma es transparente.
+     * Indica si la forma está seleccionada. Si es true, se muestra un marco
+     * visual.
      */
-    private Boolean transparente;
+    protected boolean selected = false;
 
     /**
-     * Pistas de renderizado (como alisado).
+     * Lado de los cuadrados que marcan las esquinas del marco de selección.
      */
-    protected RenderingHints render;
-    
-    /**
-     * Indica si se debe aplicar alisado al renderizar la forma.
-     */
-    private Boolean alisada;
+    private static final int TAMANO_ESQUINA = 15;
 
     /**
-     * Indica si la forma está seleccionada. Si es true, se muestra un marco
-     * visual.
+     * Trazo discontinuo del marco de selección, compartido por todas las
+     * formas.
      */
-    protected Boolean selected = false;
+    private static final Stroke TRAZO_SELECCION = new BasicStroke(1, BasicStroke.CAP_BUTT,
+            BasicStroke.JOIN_BEVEL, 0, new float[]{5f, 5f}, 0);
     
     /**
      * Constructor por defecto.
@@ -83,10 +67,7 @@ public abstract class MiShape {
      * @param alisada true si debe aplicarse alisado en el dibujo.
      */
     public MiShape(Color color, Integer grosor, Boolean transparente, Boolean alisada) {
-        this.color = color;
-        this.setStroke(grosor);
-        this.setComp(transparente);
-        this.setRender(alisada);
+        this.estilo = Estilo.obtener(color, grosor, transparente, alisada);
     }
     
     /**
@@ -96,15 +77,65 @@ public abstract class MiShape {
      * @param g2d el contexto gráfico 2D.
      */
     public void draw(Graphics2D g2d) {
-        g2d.setPaint(color);
-        g2d.setStroke(stroke);
-        g2d.setComposite(comp);
-        g2d.setRenderingHints(render);
-        drawShape(g2d);
+        aplicarEstilo(g2d);
+        dibujarGeometria(g2d);
         if (this.selected) {
             this.drawBounds(g2d);
         }
     }
+
+    /**
+     * Establece en el contexto gráfico el estilo de la forma: color, trazo,
+     * transparencia y pistas de renderizado.
+     *
+     * Las pistas se establecen antes que el trazo porque el contexto gráfico
+     * decide cómo dibujar el trazo según el alisado activo al establecerlo;
+     * en el orden inverso, el resultado dependería de la forma dibujada
+     * antes.
+     *
+     * @param g2d el contexto gráfico 2D.
+     */
+    protected void aplicarEstilo(Graphics2D g2d) {
+        g2d.setRenderingHints(estilo.getRenderCompartido());
+        g2d.setPaint(estilo.getColor());
+        g2d.setStroke(estilo.getStroke());
+        g2d.setComposite(estilo.getComp());
+    }
+
+    /**
+     * Dibuja la forma suponiendo que su estilo ya está establecido en el
+     * contexto gráfico (véase {@link #aplicarEstilo(Graphics2D)}), sin el
+     * marco de selección.
+     *
+     * @param g2d el contexto gráfico 2D.
+     */
+    protected void dibujarGeometria(Graphics2D g2d) {
+        drawShape(g2d);
+    }
+
+    /**
+     * Indica si dos formas tienen el mismo estilo, es decir, si
+     * {@link #aplicarEstilo(Graphics2D)} deja el contexto gráfico en el mismo
+     * estado para ambas. Como los estilos son compartidos, basta con comparar
+     * las referencias.
+     *
+     * @param otra la otra forma.
+     * @return true si el estilo coincide.
+     */
+    public boolean mismoEstilo(MiShape otra) {
+        return this.estilo == otra.estilo;
+    }
+
+    /**
+     * Obtiene la geometría que dibuja {@link #drawShape(Graphics2D)}, para
+     * poder dibujar juntas varias formas con el mismo estilo.
+     *
+     * @return la geometría de la forma, o null si no se puede dibujar con un
+     * único {@code draw}.
+     */
+    protected Shape getGeometria() {
+        return null;
+    }
     
     /**
      * Método abstracto que debe implementar el dibujo específico de la forma.
@@ -149,6 +180,25 @@ public abstract class MiShape {
      */
     protected abstract Rectangle2D getBounds();
 
+    /**
+     * Obtiene el rectángulo, en píxeles, que puede quedar afectado al dibujar
+     * la forma: sus límites ampliados con el grosor del trazo, el alisado y,
+     * si está seleccionada, el marco de selección.
+     *
+     * @return rectángulo que contiene todo lo que dibuja la forma.
+     */
+    public Rectangle getAreaDibujo() {
+        // Las esquinas en inglete de un trazo pueden sobresalir hasta grosor/√2
+        double margen = Math.ceil(this.estilo.getGrosor() * 0.75) + 2;
+        if (this.selected) {
+            margen = Math.max(margen, TAMANO_ESQUINA / 2 + 2);
+        }
+
+        Rectangle2D bounds = getBounds();
+        return new Rectangle2D.Double(bounds.getX() - margen, bounds.getY() - margen,
+                bounds.getWidth() + 2 * margen, bounds.getHeight() + 2 * margen).getBounds();
+    }
+
     /**
      * Dibuja el marco de selección alrededor de la forma si está seleccionada.
      * Incluye un rectángulo punteado y pequeños rectángulos en las esquinas.
@@ -158,16 +208,19 @@ public abstract class MiShape {
     protected void drawBounds(Graphics2D g2d) {
         Stroke originalStroke = g2d.getStroke();
         g2d.setColor(Color.RED);
-        float dash[] = {5f, 5f};
-        g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT,
-                BasicStroke.JOIN_BEVEL, 0, dash, 0));
+        g2d.setStroke(TRAZO_SELECCION);
 
         Rectangle2D bounds = getBounds();
         g2d.draw(bounds);
 
-        int size = 15;
-        for (Point2D p : getEsquinas(bounds)) {
-            g2d.draw(new Rectangle2D.Double(p.getX() - size / 2, p.getY() - size / 2, size, size));
+        // Se reutiliza el mismo rectángulo para las cuatro esquinas
+        int size = TAMANO_ESQUINA;
+        double x0 = bounds.getX() - size / 2;
+        double y0 = bounds.getY() - size / 2;
+        Rectangle2D esquina = new Rectangle2D.Double();
+        for (int i = 0; i < 4; i++) {
+            esquina.setRect(x0 + (i % 2) * bounds.getWidth(), y0 + (i / 2) * bounds.getHeight(), size, size);
+            g2d.draw(esquina);
         }
 
         g2d.setStroke(originalStroke);
@@ -197,7 +250,7 @@ public abstract class MiShape {
      * @return el color actual.
      */
     public Color getColor() {
-        return color;
+        return estilo.getColor();
     }
 
     /**
@@ -206,7 +259,7 @@ public abstract class MiShape {
      * @param color el nuevo color.
      */
     public void setColor(Color color) {
-        this.color = color;
+        setEstilo(this.estilo.conColor(color));
     }
 
     /**
@@ -215,7 +268,7 @@ public abstract class MiShape {
      * @return el objeto Stroke actual.
      */
     public Stroke getStroke() {
-        return stroke;
+        return estilo.getStroke();
     }
 
     /**
@@ -224,8 +277,7 @@ public abstract class MiShape {
      * @param grosor
      */
     public void setStroke(Integer grosor) {
-        this.grosor = grosor;
-        this.stroke = new BasicStroke(grosor);
+        setEstilo(this.estilo.conGrosor(grosor));
     }
 
     /**
@@ -234,7 +286,7 @@ public abstract class MiShape {
      * @return el objeto Composite actual.
      */
     public Composite getComp() {
-        return comp;
+        return estilo.getComp();
     }
 
     /**
@@ -243,19 +295,17 @@ public abstract class MiShape {
      * @param transparente
      */
     public void setComp(Boolean transparente) {
-        this.transparente = transparente;
-        this.comp = transparente 
-                ? AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f)
-                : AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f);
+        setEstilo(this.estilo.conTransparencia(transparente));
     }
 
     /**
      * Obtiene las pistas de renderizado (e.g., alisado).
      *
-     * @return el objeto RenderingHints actual.
+     * @return una copia del objeto RenderingHints actual, que es compartido
+     * con las demás formas del mismo estilo.
      */
     public RenderingHints getRender() {
-        return render;
+        return estilo.getRender();
     }
 
     /**
@@ -264,9 +314,7 @@ public abstract class MiShape {
      * @param alisada
      */
     public void setRender(Boolean alisada) {
-        this.alisada = alisada;
-        this.render = new RenderingHints(RenderingHints.KEY_ANTIALIASING, 
-                alisada ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        setEstilo(this.estilo.conAlisado(alisada));
     }
 
     /**
@@ -274,7 +322,7 @@ public abstract class MiShape {
      *
      * @return true si la forma está seleccionada, false en caso contrario.
      */
-    public Boolean getSelected() {
+    public boolean getSelected() {
         return selected;
     }
 
@@ -284,7 +332,7 @@ public abstract class MiShape {
      *
      * @param selected true para marcar como seleccionada, false para desmarcar.
      */
-    public void setSelected(Boolean selected) {
+    public void setSelected(boolean selected) {
         this.selected = selected;
     }
 
@@ -294,7 +342,7 @@ public abstract class MiShape {
      * @return true si es transparente, false en caso contrario.
      */
     public Boolean getTransparente() {
-        return transparente;
+        return estilo.isTransparente();
     }
 
     /**
@@ -303,7 +351,7 @@ public abstract class MiShape {
      * @return true si el alisado está activado, false en caso contrario.
      */
     public Boolean getAlisada() {
-        return alisada;
+        return estilo.isAlisada();
     }
 
     /**
@@ -312,6 +360,24 @@ public abstract class MiShape {
      * @return el grosor como valor entero.
      */
     public int getGrosor() {
-        return grosor;
+        return estilo.getGrosor();
+    }
+
+    /**
+     * Obtiene el estilo compartido de la forma.
+     *
+     * @return el estilo actual.
+     */
+    public Estilo getEstilo() {
+        return estilo;
+    }
+
+    /**
+     * Establece el estilo de la forma.
+     *
+     * @param estilo el nuevo estilo, obtenido con {@link Estilo#obtener}.
+     */
+    public void setEstilo(Estilo estilo) {
+        this.estilo = estilo;
     }
 }
@@ -52,23 +52,16 @@ public abstract class MiShapeRellenable extends MiShape{
     }
     
     /**
-     * Dibuja la forma aplicando las propiedades de estilo y, si corresponde, la rellena.
+     * Dibuja la forma y, si corresponde, la rellena.
      *
      * @param g2d el contexto gráfico 2D.
      */
     @Override
-    public void draw(Graphics2D g2d) {
-        g2d.setPaint(color);
-        g2d.setStroke(stroke);
-        g2d.setComposite(comp);
-        g2d.setRenderingHints(render);
+    protected void dibujarGeometria(Graphics2D g2d) {
         if (rellena) {
             this.fillShape(g2d);
         }
         this.drawShape(g2d);
-        if (this.selected) {
-            this.drawBounds(g2d);
-        }
     }
     
     /**
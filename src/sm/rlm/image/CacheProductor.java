@@ -0,0 +1,120 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Caché acotada y segura entre hilos para los objetos generados por
+ * {@link MiKernelProducer} y {@link MiLookupTableProducer}.
+ *
+ * Guarda como máximo un número fijo de entradas y, cuando se llena, descarta
+ * la usada hace más tiempo. Lleva la cuenta de aciertos y fallos de las
+ * búsquedas de primer nivel: si un productor pide a su vez otro valor a la
+ * misma caché, esa búsqueda anidada no se cuenta, de modo que cada petición
+ * pública cuenta una sola vez.
+ *
+ * @author rober
+ * @param <K> Tipo de la clave (los parámetros con los que se generó el valor).
+ * @param <V> Tipo de los valores guardados.
+ */
+class CacheProductor<K, V> {
+
+    /**
+     * Entradas de la caché, ordenadas de la menos a la más recientemente
+     * usada.
+     */
+    private final LinkedHashMap<K, V> entradas;
+
+    /**
+     * Número de búsquedas que encontraron el valor en la caché.
+     */
+    private long aciertos = 0;
+
+    /**
+     * Número de búsquedas que tuvieron que generar el valor.
+     */
+    private long fallos = 0;
+
+    /**
+     * Número de llamadas a {@link #obtener} en curso en el hilo que tiene el
+     * cerrojo de la caché (mayor que 1 si hay búsquedas anidadas).
+     */
+    private int profundidad = 0;
+
+    /**
+     * Crea una caché con la capacidad indicada.
+     *
+     * @param capacidad Número máximo de entradas.
+     */
+    CacheProductor(int capacidad) {
+        this.entradas = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /**
+     * Devuelve el valor asociado a la clave, generándolo y guardándolo si no
+     * estaba en la caché.
+     *
+     * @param clave Parámetros con los que se genera el valor.
+     * @param productor Función que genera el valor si no está en la caché.
+     * @return Valor asociado a la clave.
+     */
+    synchronized V obtener(K clave, Supplier<? extends V> productor) {
+        boolean primerNivel = this.profundidad == 0;
+        this.profundidad++;
+        try {
+            V valor = this.entradas.get(clave);
+            if (valor != null) {
+                if (primerNivel) {
+                    this.aciertos++;
+                }
+                return valor;
+            }
+
+            if (primerNivel) {
+                this.fallos++;
+            }
+            valor = productor.get();
+            this.entradas.put(clave, valor);
+            return valor;
+        } finally {
+            this.profundidad--;
+        }
+    }
+
+    /**
+     * Obtiene el número de búsquedas que encontraron el valor en la caché.
+     *
+     * @return número de aciertos.
+     */
+    synchronized long getAciertos() {
+        return this.aciertos;
+    }
+
+    /**
+     * Obtiene el número de búsquedas que tuvieron que generar el valor.
+     *
+     * @return número de fallos.
+     */
+    synchronized long getFallos() {
+        return this.fallos;
+    }
+
+    /**
+     * Vacía la caché y pone a cero los contadores.
+     */
+    synchronized void limpiar() {
+        this.entradas.clear();
+        this.aciertos = 0;
+        this.fallos = 0;
+    }
+}
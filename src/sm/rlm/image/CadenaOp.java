@@ -0,0 +1,265 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ByteLookupTable;
+import java.awt.image.LookupOp;
+import java.awt.image.LookupTable;
+import java.util.ArrayList;
+import java.util.List;
+import sm.image.BufferedImageOpAdapter;
+
+/**
+ * Operación que aplica una secuencia de operaciones de imagen, fusionando en
+ * una sola pasada las operaciones puntuales consecutivas.
+ *
+ * Las operaciones que implementan {@link OperacionPuntual} (y cuyo
+ * {@code esPuntual()} es true), así como las {@link LookupOp} basadas en
+ * {@link ByteLookupTable} (por ejemplo las de {@link MiLookupTableProducer}),
+ * se agrupan en etapas en las que cada píxel se lee una vez, se le aplican
+ * todas las operaciones del grupo y se escribe una vez, sin crear imágenes
+ * intermedias. Además, las tablas consecutivas (y las posterizaciones sin
+ * tramado) se componen con {@link ComposicionLUT} en una sola tabla. Cualquier
+ * otra operación (convoluciones, por ejemplo) rompe la fusión y se aplica por
+ * separado sobre la imagen completa.
+ *
+ * Si la imagen fuente tiene menos de tres bandas, no se fusiona y cada
+ * operación se aplica por separado.
+ *
+ * @author rober
+ */
+public class CadenaOp extends BufferedImageOpAdapter {
+
+    /**
+     * Operaciones de la cadena, en el orden en que se aplican.
+     */
+    private List<BufferedImageOp> operaciones;
+
+    /**
+     * Etapas en las que se agrupan las operaciones: cada elemento es una
+     * etapa fusionada de operaciones puntuales o una operación suelta.
+     */
+    private List<BufferedImageOp> etapas = new ArrayList<>();
+
+    /**
+     * Número de hilos usados en las etapas fusionadas.
+     */
+    private int paralelismo = 1;
+
+    /**
+     * Constructor de la cadena de operaciones.
+     *
+     * @param operaciones Operaciones a aplicar, en orden.
+     */
+    public CadenaOp(BufferedImageOp... operaciones) {
+        this.operaciones = List.of(operaciones);
+
+        List<OperacionPuntual> grupo = new ArrayList<>();
+        for (int i = 0; i < this.operaciones.size(); i++) {
+            BufferedImageOp op = this.operaciones.get(i);
+            OperacionPuntual puntual = comoPuntual(op);
+
+            // Las tablas consecutivas se componen en una sola
+            int fin = i + 1;
+            while (ComposicionLUT.esComponible(op) && fin < this.operaciones.size()
+                    && ComposicionLUT.esComponible(this.operaciones.get(fin))) {
+                fin++;
+            }
+            if (fin > i + 1) {
+                ComposicionLUT composicion = new ComposicionLUT();
+                for (BufferedImageOp tabla : this.operaciones.subList(i, fin)) {
+                    composicion.componer(tabla);
+                }
+                puntual = new TablaPuntual(composicion.getTablaConAlfa());
+                i = fin - 1;
+            }
+
+            if (puntual != null) {
+                grupo.add(puntual);
+            } else {
+                if (!grupo.isEmpty()) {
+                    this.etapas.add(new EtapaFusionada(grupo));
+                    grupo = new ArrayList<>();
+                }
+                this.etapas.add(op);
+            }
+        }
+        if (!grupo.isEmpty()) {
+            this.etapas.add(new EtapaFusionada(grupo));
+        }
+    }
+
+    /**
+     * Aplica la cadena de operaciones sobre una imagen.
+     *
+     * @param src Imagen fuente sobre la que se aplica la cadena.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible.
+     * @return Imagen resultante de aplicar todas las operaciones.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     */
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
+        if (src == null) {
+            throw new NullPointerException("src image is null");
+        }
+
+        if (this.operaciones.isEmpty()) {
+            if (dest == null) {
+                dest = createCompatibleDestImage(src, null);
+            }
+            src.copyData(dest.getRaster());
+            return dest;
+        }
+
+        List<BufferedImageOp> pasos = (src.getRaster().getNumBands() >= 3) ? this.etapas : this.operaciones;
+
+        BufferedImage actual = src;
+        for (int i = 0; i < pasos.size(); i++) {
+            BufferedImageOp paso = pasos.get(i);
+            boolean ultimo = (i == pasos.size() - 1);
+
+            if (paso instanceof EtapaFusionada) {
+                ((EtapaFusionada) paso).setParalelismo(this.paralelismo);
+                // Una etapa puntual puede escribir sobre su propia entrada si
+                // esta es una imagen intermedia
+                BufferedImage salida = ultimo ? dest : (actual != src ? actual : null);
+                actual = paso.filter(actual, salida);
+            } else {
+                actual = paso.filter(actual, ultimo ? dest : null);
+            }
+        }
+
+        return actual;
+    }
+
+    /**
+     * Obtiene la operación puntual equivalente a una operación de imagen.
+     *
+     * @param op Operación de imagen.
+     * @return La operación puntual, o {@code null} si la operación no se
+     * puede aplicar píxel a píxel.
+     */
+    private static OperacionPuntual comoPuntual(BufferedImageOp op) {
+        if (op instanceof OperacionPuntual && ((OperacionPuntual) op).esPuntual()) {
+            return (OperacionPuntual) op;
+        }
+        if (op instanceof LookupOp) {
+            LookupTable tabla = ((LookupOp) op).getTable();
+            if (tabla instanceof ByteLookupTable && tabla.getNumComponents() != 2) {
+                return new TablaPuntual((ByteLookupTable) tabla);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene las operaciones de la cadena, en el orden en que se aplican.
+     *
+     * @return lista inmutable de operaciones.
+     */
+    public List<BufferedImageOp> getOperaciones() {
+        return operaciones;
+    }
+
+    /**
+     * Obtiene el número de hilos usados en las etapas fusionadas.
+     *
+     * @return el paralelismo actual (1 si es secuencial).
+     */
+    public int getParalelismo() {
+        return paralelismo;
+    }
+
+    /**
+     * Establece el número de hilos usados en las etapas fusionadas.
+     *
+     * @param paralelismo número de hilos (1 para procesado secuencial).
+     * @throws IllegalArgumentException si el paralelismo es menor que 1.
+     */
+    public void setParalelismo(int paralelismo) {
+        if (paralelismo < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+        this.paralelismo = paralelismo;
+    }
+
+    /**
+     * Etapa que aplica varias operaciones puntuales en una sola pasada.
+     */
+    private static class EtapaFusionada extends MiPixelOpAdapter {
+
+        private final OperacionPuntual[] puntuales;
+
+        EtapaFusionada(List<OperacionPuntual> puntuales) {
+            this.puntuales = puntuales.toArray(new OperacionPuntual[0]);
+        }
+
+        @Override
+        public int filtrarPixel(int argb) {
+            for (OperacionPuntual op : this.puntuales) {
+                argb = op.filtrarPixel(argb);
+            }
+            return argb;
+        }
+
+        /**
+         * Aplica las operaciones de la etapa fila a fila: la primera lee de la
+         * fuente y las siguientes trabajan sobre la fila ya escrita en el
+         * destino, aprovechando el recorrido por filas de cada operación.
+         */
+        @Override
+        protected void filtrarFila(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa) {
+            int[] entrada = src;
+            int entradaPos = srcPos;
+            for (OperacionPuntual op : this.puntuales) {
+                if (op instanceof MiPixelOpAdapter) {
+                    ((MiPixelOpAdapter) op).filtrarFila(entrada, entradaPos, dest, destPos, longitud, alfa);
+                } else {
+                    for (int k = 0; k < longitud; k++) {
+                        dest[destPos + k] = op.filtrarPixel(entrada[entradaPos + k] | alfa);
+                    }
+                }
+                entrada = dest;
+                entradaPos = destPos;
+                alfa = 0;
+            }
+        }
+    }
+
+    /**
+     * Adaptador de una {@link ByteLookupTable} como operación puntual, con la
+     * misma semántica que {@link LookupOp}: una tabla se aplica a R, G y B;
+     * tres tablas, a cada componente de color; cuatro, también al alfa.
+     */
+    private static class TablaPuntual implements OperacionPuntual {
+
+        private final byte[] r;
+        private final byte[] g;
+        private final byte[] b;
+        private final byte[] a;
+        private final int offset;
+
+        TablaPuntual(ByteLookupTable tabla) {
+            byte[][] datos = tabla.getTable();
+            this.offset = tabla.getOffset();
+            this.r = datos[0];
+            this.g = (datos.length >= 3) ? datos[1] : datos[0];
+            this.b = (datos.length >= 3) ? datos[2] : datos[0];
+            this.a = (datos.length >= 4) ? datos[3] : null;
+        }
+
+        @Override
+        public int filtrarPixel(int argb) {
+            int alfa = (this.a != null) ? (this.a[(argb >>> 24) - offset] & 0xFF) << 24 : argb & 0xFF000000;
+            return alfa
+                    | ((this.r[((argb >> 16) & 0xFF) - offset] & 0xFF) << 16)
+                    | ((this.g[((argb >> 8) & 0xFF) - offset] & 0xFF) << 8)
+                    | (this.b[(argb & 0xFF) - offset] & 0xFF);
+        }
+    }
+}
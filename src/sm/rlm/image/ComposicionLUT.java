@@ -0,0 +1,280 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ByteLookupTable;
+import java.awt.image.LookupOp;
+import java.awt.image.LookupTable;
+import java.awt.image.ShortLookupTable;
+import java.util.Arrays;
+
+/**
+ * Composición de tablas de transformación de 8 bits por canal.
+ *
+ * Aplicar varias tablas seguidas (por ejemplo, una curva ABC de
+ * {@link MiLookupTableProducer} y después una posterización) equivale a
+ * aplicar una sola tabla cuyo valor para cada entrada es el resultado de
+ * pasarla por todas. Esta clase calcula esa tabla al construirla, de modo que
+ * N operaciones de tabla cuestan una sola pasada sobre la imagen:
+ *
+ * <pre>
+ * LookupOp op = new ComposicionLUT()
+ *         .componer(MiLookupTableProducer.crearTablaABC(20, 140, 235))
+ *         .componer(new PosterizarOp(4))
+ *         .crearLookupOp();
+ * </pre>
+ *
+ * Se pueden componer {@link LookupTable}s, {@link LookupOp}s y
+ * {@link PosterizarOp} sin tramado. Se siguen las reglas de {@link LookupOp}:
+ * una tabla de una o tres bandas se aplica solo a los componentes de color y
+ * una de cuatro bandas también al alfa. {@code PosterizarOp} modifica también
+ * el alfa, igual que cuando se aplica sola, por lo que la composición guarda
+ * el resultado de las cuatro bandas y permite obtener la tabla con o sin
+ * alfa.
+ *
+ * @author rober
+ */
+public class ComposicionLUT {
+
+    /**
+     * Nombres de las bandas, para el volcado.
+     */
+    private static final String[] BANDAS = {"R", "G", "B", "A"};
+
+    /**
+     * Valor resultante de cada entrada para las bandas R, G, B y A.
+     */
+    private final int[][] tablas = new int[4][256];
+
+    /**
+     * Número de operaciones compuestas.
+     */
+    private int numOperaciones = 0;
+
+    /**
+     * Crea una composición vacía, equivalente a la identidad.
+     */
+    public ComposicionLUT() {
+        for (int[] tabla : this.tablas) {
+            for (int i = 0; i < 256; i++) {
+                tabla[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Indica si una operación se puede añadir a la composición: una
+     * {@link LookupOp} con una tabla de bytes de 1, 3 o 4 bandas o una
+     * {@link PosterizarOp} sin tramado.
+     *
+     * @param op Operación a comprobar.
+     * @return true si la operación se puede componer.
+     */
+    public static boolean esComponible(BufferedImageOp op) {
+        if (op instanceof PosterizarOp) {
+            return ((PosterizarOp) op).esPuntual();
+        }
+        if (op instanceof LookupOp) {
+            LookupTable tabla = ((LookupOp) op).getTable();
+            return tabla instanceof ByteLookupTable && tabla.getNumComponents() != 2
+                    && tabla.getNumComponents() <= 4;
+        }
+        return false;
+    }
+
+    /**
+     * Añade una operación al final de la composición.
+     *
+     * @param op Operación a componer (véase {@link #esComponible}).
+     * @return esta composición, para encadenar llamadas.
+     * @throws IllegalArgumentException si la operación no se puede componer.
+     */
+    public ComposicionLUT componer(BufferedImageOp op) {
+        if (op instanceof PosterizarOp) {
+            return componer((PosterizarOp) op);
+        }
+        if (op instanceof LookupOp) {
+            return componer(((LookupOp) op).getTable());
+        }
+        throw new IllegalArgumentException("La operación no se puede expresar como una tabla por canal");
+    }
+
+    /**
+     * Añade una posterización al final de la composición.
+     *
+     * @param op Posterización a componer.
+     * @return esta composición, para encadenar llamadas.
+     * @throws IllegalArgumentException si la posterización usa tramado, ya
+     * que entonces depende de la posición del píxel.
+     */
+    public ComposicionLUT componer(PosterizarOp op) {
+        if (!op.esPuntual()) {
+            throw new IllegalArgumentException("La posterización con tramado no se puede componer");
+        }
+
+        for (int i = 0; i < 256; i++) {
+            int argb = op.filtrarPixel((this.tablas[3][i] << 24) | (this.tablas[0][i] << 16)
+                    | (this.tablas[1][i] << 8) | this.tablas[2][i]);
+            this.tablas[0][i] = (argb >> 16) & 0xFF;
+            this.tablas[1][i] = (argb >> 8) & 0xFF;
+            this.tablas[2][i] = argb & 0xFF;
+            this.tablas[3][i] = argb >>> 24;
+        }
+        this.numOperaciones++;
+        return this;
+    }
+
+    /**
+     * Añade una tabla al final de la composición. Los valores de la tabla
+     * fuera de [0, 255] se recortan.
+     *
+     * @param tabla Tabla de 1, 3 o 4 bandas.
+     * @return esta composición, para encadenar llamadas.
+     * @throws IllegalArgumentException si la tabla tiene otro número de bandas
+     * o no cubre los valores de 0 a 255.
+     */
+    public ComposicionLUT componer(LookupTable tabla) {
+        int n = tabla.getNumComponents();
+        if (n == 2 || n > 4) {
+            throw new IllegalArgumentException("La tabla debe tener 1, 3 o 4 bandas");
+        }
+
+        // Con una banda, la misma tabla se aplica a R, G y B por separado
+        int numConsultas = (n == 1) ? 3 : 1;
+        int[] entrada = new int[n];
+        int[] salida = new int[n];
+        // Las tablas de bytes y de shorts devuelven sus valores con signo
+        int mascara = (tabla instanceof ByteLookupTable) ? 0xFF
+                : (tabla instanceof ShortLookupTable) ? 0xFFFF : -1;
+
+        try {
+            for (int i = 0; i < 256; i++) {
+                for (int c = 0; c < numConsultas; c++) {
+                    for (int k = 0; k < n; k++) {
+                        entrada[k] = this.tablas[c + k][i];
+                    }
+                    tabla.lookupPixel(entrada, salida);
+                    for (int k = 0; k < n; k++) {
+                        this.tablas[c + k][i] = Math.min(255, Math.max(0, salida[k] & mascara));
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("La tabla no cubre los valores de 0 a 255", ex);
+        }
+        this.numOperaciones++;
+        return this;
+    }
+
+    /**
+     * Obtiene la tabla equivalente a la composición para los componentes de
+     * color. Tiene una banda si R, G y B coinciden (y entonces se puede
+     * aplicar también a imágenes en gris) o tres en otro caso.
+     *
+     * La tabla no modifica el alfa. Si alguna operación compuesta lo modifica
+     * (como {@link PosterizarOp}) y la imagen tiene alfa, se debe usar
+     * {@link #getTablaConAlfa()}.
+     *
+     * @return Tabla de bytes equivalente, sin alfa.
+     */
+    public ByteLookupTable getTabla() {
+        boolean iguales = Arrays.equals(this.tablas[0], this.tablas[1])
+                && Arrays.equals(this.tablas[0], this.tablas[2]);
+        return crearTabla(iguales ? 1 : 3);
+    }
+
+    /**
+     * Obtiene la tabla equivalente a la composición con cuatro bandas (R, G,
+     * B y A). Solo se puede aplicar a imágenes con alfa.
+     *
+     * @return Tabla de bytes equivalente, con alfa.
+     */
+    public ByteLookupTable getTablaConAlfa() {
+        return crearTabla(4);
+    }
+
+    /**
+     * Crea una operación Lookup con la tabla equivalente a la composición
+     * para los componentes de color (véase {@link #getTabla()}).
+     *
+     * @return Operación {@code LookupOp} que aplica todas las operaciones
+     * compuestas en una sola pasada.
+     */
+    public LookupOp crearLookupOp() {
+        return new LookupOp(getTabla(), null);
+    }
+
+    /**
+     * Crea una operación Lookup con la tabla equivalente a la composición,
+     * incluido el alfa (véase {@link #getTablaConAlfa()}).
+     *
+     * @return Operación {@code LookupOp} que aplica todas las operaciones
+     * compuestas en una sola pasada.
+     */
+    public LookupOp crearLookupOpConAlfa() {
+        return new LookupOp(getTablaConAlfa(), null);
+    }
+
+    /**
+     * Crea una tabla de bytes con las primeras bandas de la composición.
+     *
+     * @param numBandas Número de bandas (1, 3 o 4).
+     * @return Tabla de bytes.
+     */
+    private ByteLookupTable crearTabla(int numBandas) {
+        byte[][] datos = new byte[numBandas][256];
+        for (int c = 0; c < numBandas; c++) {
+            for (int i = 0; i < 256; i++) {
+                datos[c][i] = (byte) this.tablas[c][i];
+            }
+        }
+        return new ByteLookupTable(0, datos);
+    }
+
+    /**
+     * Obtiene el valor resultante de una entrada en una banda.
+     *
+     * @param banda Banda (0 = R, 1 = G, 2 = B, 3 = A).
+     * @param valor Valor de entrada, de 0 a 255.
+     * @return Valor tras aplicar todas las operaciones compuestas.
+     */
+    public int consultar(int banda, int valor) {
+        return this.tablas[banda][valor];
+    }
+
+    /**
+     * Obtiene el número de operaciones compuestas.
+     *
+     * @return número de operaciones.
+     */
+    public int getNumOperaciones() {
+        return numOperaciones;
+    }
+
+    /**
+     * Vuelca la tabla compuesta como texto, una línea por valor de entrada
+     * con el resultado de cada banda, para inspeccionarla o compararla en
+     * pruebas.
+     *
+     * @return Volcado de la tabla.
+     */
+    public String volcar() {
+        StringBuilder sb = new StringBuilder("entrada");
+        for (String banda : BANDAS) {
+            sb.append('\t').append(banda);
+        }
+        sb.append('\n');
+
+        for (int i = 0; i < 256; i++) {
+            sb.append(i);
+            for (int[] tabla : this.tablas) {
+                sb.append('\t').append(tabla[i]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import sm.rlm.enums.ModoBorde;
+
+/**
+ * Convolución con una máscara arbitraria que calcula también el borde de la
+ * imagen, según un {@link ModoBorde}.
+ *
+ * {@code ConvolveOp} deja sin calcular un marco del tamaño del radio de la
+ * máscara (a cero o copiado de la fuente), lo que obliga a ampliar la imagen
+ * antes de filtrar para obtener bordes correctos. Esta operación obtiene los
+ * píxeles de fuera de la imagen al vuelo: las filas de la máscara que caen
+ * fuera se sustituyen por las que indica el modo de borde antes de recorrer
+ * cada fila, y las columnas del borde se procesan en bucles aparte. En el
+ * interior, el bucle no tiene comprobaciones ni ajustes de coordenadas.
+ *
+ * Solo se recorren los elementos no nulos de la máscara, de modo que las
+ * máscaras dispersas (como la de perfilado en cruz) cuestan menos. Como
+ * {@code ConvolveOp}, se procesan todas las bandas de la imagen, incluido el
+ * alfa, y cada muestra se redondea y se recorta a su rango.
+ *
+ * @author rober
+ */
+public class ConvolucionOp extends MiBufferedImageOpAdapter {
+
+    /**
+     * Bits de la parte fraccionaria de los pesos en punto fijo.
+     */
+    public static final int BITS_FRACCION = 12;
+
+    /**
+     * Máximo valor admitido para la suma de los valores absolutos de los
+     * pesos de la máscara, para que las sumas en punto fijo no desborden.
+     */
+    public static final float MAX_SUMA_PESOS = 2048;
+
+    /**
+     * Máscara de la convolución.
+     */
+    private Kernel kernel;
+
+    /**
+     * Modo de obtener los píxeles de fuera de la imagen.
+     */
+    private ModoBorde modoBorde;
+
+    /**
+     * Desplazamiento horizontal, respecto al píxel de destino, del píxel
+     * fuente que corresponde a cada elemento no nulo de la máscara.
+     */
+    private int[] dx;
+
+    /**
+     * Desplazamiento vertical, respecto al píxel de destino, del píxel fuente
+     * que corresponde a cada elemento no nulo de la máscara.
+     */
+    private int[] dy;
+
+    /**
+     * Peso de cada elemento no nulo de la máscara.
+     */
+    private float[] pesos;
+
+    /**
+     * Peso de cada elemento no nulo de la máscara en punto fijo.
+     */
+    private int[] pesosFijos;
+
+    /**
+     * Constructor de la convolución, repitiendo el píxel del borde.
+     *
+     * @param kernel Máscara de la convolución.
+     * @throws IllegalArgumentException si la suma de los valores absolutos de
+     * los pesos es mayor que {@link #MAX_SUMA_PESOS}.
+     */
+    public ConvolucionOp(Kernel kernel) {
+        this(kernel, ModoBorde.CLAMP);
+    }
+
+    /**
+     * Constructor de la convolución.
+     *
+     * @param kernel Máscara de la convolución.
+     * @param modoBorde Modo de obtener los píxeles de fuera de la imagen.
+     * @throws IllegalArgumentException si la suma de los valores absolutos de
+     * los pesos es mayor que {@link #MAX_SUMA_PESOS}.
+     */
+    public ConvolucionOp(Kernel kernel, ModoBorde modoBorde) {
+        this.kernel = kernel;
+        this.modoBorde = modoBorde;
+
+        float[] datos = kernel.getKernelData(null);
+        int n = 0;
+        float suma = 0;
+        for (float w : datos) {
+            if (w != 0) {
+                n++;
+                suma += Math.abs(w);
+            }
+        }
+        if (!(suma <= MAX_SUMA_PESOS)) {
+            throw new IllegalArgumentException("Pesos de la máscara demasiado grandes");
+        }
+
+        this.dx = new int[n];
+        this.dy = new int[n];
+        this.pesos = new float[n];
+        this.pesosFijos = new int[n];
+        int k = 0;
+        for (int j = 0; j < kernel.getHeight(); j++) {
+            for (int i = 0; i < kernel.getWidth(); i++) {
+                float w = datos[j * kernel.getWidth() + i];
+                if (w != 0) {
+                    // Como en ConvolveOp, la máscara se aplica girada
+                    this.dx[k] = kernel.getXOrigin() - i;
+                    this.dy[k] = kernel.getYOrigin() - j;
+                    this.pesos[k] = w;
+                    this.pesosFijos[k] = Math.round(w * (1 << BITS_FRACCION));
+                    k++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Aplica la convolución sobre una región de la imagen.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible.
+     * @param roi Región a procesar.
+     * @return Imagen resultante con el filtro aplicado.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @throws IllegalArgumentException si fuente y destino son la misma
+     * imagen.
+     */
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dest, Rectangle roi) {
+        if (src != null && src == dest) {
+            throw new IllegalArgumentException("src and dest must be different images");
+        }
+        return super.filter(src, dest, roi);
+    }
+
+    /**
+     * Aplica la convolución sobre una tesela de la imagen, eligiendo el
+     * recorrido más rápido según el tipo de las imágenes.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    @Override
+    protected void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        if (src.getType() == dest.getType() && esEmpaquetadaInt(src)) {
+            filtrarTeselaInt(src.getRaster(), dest.getRaster(), tesela);
+        } else {
+            filtrarTeselaGenerica(src.getRaster(), dest.getRaster(), tesela);
+        }
+    }
+
+    /**
+     * Calcula el rango de columnas de la tesela en el que ningún elemento de
+     * la máscara queda fuera de la imagen.
+     *
+     * @param tesela Región de la imagen a procesar.
+     * @param ancho Ancho de la imagen.
+     * @return Array con la primera columna interior y la siguiente a la
+     * última (iguales si no hay interior).
+     */
+    private int[] getColumnasInteriores(Rectangle tesela, int ancho) {
+        int izquierda = 0;
+        int derecha = 0;
+        for (int desp : this.dx) {
+            izquierda = Math.max(izquierda, -desp);
+            derecha = Math.max(derecha, desp);
+        }
+
+        int fin = tesela.x + tesela.width;
+        int xIni = Math.min(Math.max(tesela.x, izquierda), fin);
+        int xFin = Math.max(xIni, Math.min(fin, ancho - derecha));
+        return new int[]{xIni, xFin};
+    }
+
+    /**
+     * Recorre una tesela de imágenes con píxeles empaquetados en enteros,
+     * convolucionando los cuatro canales de cada píxel con los pesos en punto
+     * fijo.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaInt(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela) {
+        int[] s = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+        int[] d = ((DataBufferInt) destRaster.getDataBuffer()).getData();
+        int ancho = srcRaster.getWidth();
+        int alto = srcRaster.getHeight();
+        int[] w = this.pesosFijos;
+        int n = w.length;
+        int redondeo = 1 << (BITS_FRACCION - 1);
+        int fin = tesela.x + tesela.width;
+        int[] interior = getColumnasInteriores(tesela, ancho);
+
+        // Posición en el array del principio de la fila que lee cada elemento
+        // y la misma posición ya desplazada a su columna
+        int[] filas = new int[n];
+        int[] posiciones = new int[n];
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            for (int k = 0; k < n; k++) {
+                filas[k] = getIndicePixel(srcRaster, 0, this.modoBorde.ajustar(y + this.dy[k], alto));
+                posiciones[k] = filas[k] + this.dx[k];
+            }
+            int filaDest = getIndicePixel(destRaster, 0, y);
+
+            for (int x = interior[0]; x < interior[1]; x++) {
+                int a = redondeo, r = redondeo, g = redondeo, b = redondeo;
+                for (int k = 0; k < n; k++) {
+                    int p = s[posiciones[k] + x];
+                    int wk = w[k];
+                    a += wk * (p >>> 24);
+                    r += wk * ((p >> 16) & 0xFF);
+                    g += wk * ((p >> 8) & 0xFF);
+                    b += wk * (p & 0xFF);
+                }
+                d[filaDest + x] = empaquetar(a, r, g, b);
+            }
+
+            // Columnas de los bordes izquierdo y derecho
+            for (int x = tesela.x; x < interior[0]; x++) {
+                d[filaDest + x] = convolucionarBordeInt(s, filas, x, ancho);
+            }
+            for (int x = interior[1]; x < fin; x++) {
+                d[filaDest + x] = convolucionarBordeInt(s, filas, x, ancho);
+            }
+        }
+    }
+
+    /**
+     * Calcula un píxel empaquetado de una columna del borde, ajustando la
+     * columna de cada elemento de la máscara según el modo de borde.
+     *
+     * @param s Array de datos de la fuente.
+     * @param filas Posición del principio de la fila que lee cada elemento.
+     * @param x Columna del píxel de destino.
+     * @param ancho Ancho de la imagen.
+     * @return Píxel resultante (0xAARRGGBB).
+     */
+    private int convolucionarBordeInt(int[] s, int[] filas, int x, int ancho) {
+        int redondeo = 1 << (BITS_FRACCION - 1);
+        int a = redondeo, r = redondeo, g = redondeo, b = redondeo;
+        for (int k = 0; k < this.pesosFijos.length; k++) {
+            int p = s[filas[k] + this.modoBorde.ajustar(x + this.dx[k], ancho)];
+            int wk = this.pesosFijos[k];
+            a += wk * (p >>> 24);
+            r += wk * ((p >> 16) & 0xFF);
+            g += wk * ((p >> 8) & 0xFF);
+            b += wk * (p & 0xFF);
+        }
+        return empaquetar(a, r, g, b);
+    }
+
+    /**
+     * Pasa a entero, recorta y empaqueta los cuatro canales de un píxel
+     * calculados en punto fijo.
+     *
+     * @param a Alfa.
+     * @param r Rojo.
+     * @param g Verde.
+     * @param b Azul.
+     * @return Píxel empaquetado (0xAARRGGBB).
+     */
+    private static int empaquetar(int a, int r, int g, int b) {
+        return (Math.min(255, Math.max(0, a >> BITS_FRACCION)) << 24)
+                | (Math.min(255, Math.max(0, r >> BITS_FRACCION)) << 16)
+                | (Math.min(255, Math.max(0, g >> BITS_FRACCION)) << 8)
+                | Math.min(255, Math.max(0, b >> BITS_FRACCION));
+    }
+
+    /**
+     * Recorre una tesela de cualquier tipo de imagen mediante el acceso
+     * genérico del raster, fila a fila, con los pesos en coma flotante.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaGenerica(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela) {
+        int ancho = srcRaster.getWidth();
+        int alto = srcRaster.getHeight();
+        int numBandas = srcRaster.getNumBands();
+        int n = this.pesos.length;
+        int fin = tesela.x + tesela.width;
+        int[] interior = getColumnasInteriores(tesela, ancho);
+
+        int[] maximos = new int[numBandas];
+        for (int b = 0; b < numBandas; b++) {
+            maximos[b] = (1 << srcRaster.getSampleModel().getSampleSize(b)) - 1;
+        }
+
+        // Filas de la fuente que cubre la máscara, de la más alta a la más
+        // baja, y la que lee cada elemento
+        int dyMin = 0;
+        int dyMax = 0;
+        for (int desp : this.dy) {
+            dyMin = Math.min(dyMin, desp);
+            dyMax = Math.max(dyMax, desp);
+        }
+        int[][] leidas = new int[dyMax - dyMin + 1][ancho * numBandas];
+        int[][] filas = new int[n][];
+        for (int k = 0; k < n; k++) {
+            filas[k] = leidas[this.dy[k] - dyMin];
+        }
+        int[] salida = new int[tesela.width * numBandas];
+        float[] acumulado = new float[numBandas];
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            for (int j = 0; j < leidas.length; j++) {
+                srcRaster.getPixels(0, this.modoBorde.ajustar(y + dyMin + j, alto), ancho, 1, leidas[j]);
+            }
+
+            for (int x = tesela.x; x < fin; x++) {
+                boolean borde = x < interior[0] || x >= interior[1];
+                Arrays.fill(acumulado, 0.5f);
+
+                for (int k = 0; k < n; k++) {
+                    int xFuente = borde ? this.modoBorde.ajustar(x + this.dx[k], ancho) : x + this.dx[k];
+                    int i = xFuente * numBandas;
+                    for (int b = 0; b < numBandas; b++) {
+                        acumulado[b] += this.pesos[k] * filas[k][i + b];
+                    }
+                }
+
+                int j = (x - tesela.x) * numBandas;
+                for (int b = 0; b < numBandas; b++) {
+                    salida[j + b] = Math.min(maximos[b], Math.max(0, (int) Math.floor(acumulado[b])));
+                }
+            }
+
+            destRaster.setPixels(tesela.x, y, tesela.width, 1, salida);
+        }
+    }
+
+    /**
+     * Obtiene la máscara de la convolución.
+     *
+     * @return la máscara.
+     */
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Obtiene el modo de obtener los píxeles de fuera de la imagen.
+     *
+     * @return el modo de borde.
+     */
+    public ModoBorde getModoBorde() {
+        return modoBorde;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mantiene actualizado el resultado de aplicar una operación a una imagen que
+ * se modifica por partes, recalculando solo las zonas modificadas.
+ *
+ * Cada vez que se modifica una zona de la imagen fuente (por ejemplo, al
+ * volcar una figura en el lienzo), se marca como sucia con
+ * {@link #marcarSucia(Rectangle)}. Al llamar a {@link #actualizar()} se vuelve
+ * a filtrar solo cada zona sucia, ampliada con el margen (halo) que necesite
+ * la operación según {@link FiltradoPorTiras#calcularHalo(BufferedImageOp)}.
+ * Así, el coste es proporcional al tamaño de la modificación y no al de la
+ * imagen.
+ *
+ * Las operaciones de {@link MiBufferedImageOpAdapter} se aplican directamente
+ * sobre la región del destino; el resto se aplica sobre una subimagen de la
+ * fuente con el margen incluido y se copia al destino la parte interior. Si no
+ * se conoce el margen que necesita la operación, cualquier modificación
+ * obliga a filtrar la imagen completa.
+ *
+ * @author rober
+ */
+public class FiltradoIncremental {
+
+    /**
+     * Operación que se aplica.
+     */
+    private BufferedImageOp op;
+
+    /**
+     * Imagen fuente, que se modifica por partes.
+     */
+    private BufferedImage src;
+
+    /**
+     * Imagen con el resultado de la operación.
+     */
+    private BufferedImage dest;
+
+    /**
+     * Píxeles de margen que necesita la operación, o -1 si no se conoce.
+     */
+    private int halo;
+
+    /**
+     * Zonas de la fuente modificadas desde la última actualización. No se
+     * solapan entre sí.
+     */
+    private List<Rectangle> sucias = new ArrayList<>();
+
+    /**
+     * Constructor del filtrado incremental. Filtra la imagen completa para
+     * obtener el resultado inicial.
+     *
+     * @param op Operación a aplicar.
+     * @param src Imagen fuente.
+     */
+    public FiltradoIncremental(BufferedImageOp op, BufferedImage src) {
+        this(op, src, op.filter(src, null));
+    }
+
+    /**
+     * Constructor del filtrado incremental a partir de un resultado ya
+     * calculado.
+     *
+     * @param op Operación a aplicar.
+     * @param src Imagen fuente.
+     * @param dest Resultado actual de aplicar la operación a la fuente.
+     * @throws IllegalArgumentException si fuente y destino son la misma imagen
+     * o tienen distinto tamaño.
+     */
+    public FiltradoIncremental(BufferedImageOp op, BufferedImage src, BufferedImage dest) {
+        if (src == dest) {
+            throw new IllegalArgumentException("src and dest must be different images");
+        }
+        if (src.getWidth() != dest.getWidth() || src.getHeight() != dest.getHeight()) {
+            throw new IllegalArgumentException("src and dest must have the same size");
+        }
+        this.op = op;
+        this.src = src;
+        this.dest = dest;
+        this.halo = FiltradoPorTiras.calcularHalo(op);
+    }
+
+    /**
+     * Marca como modificada una zona de la imagen fuente. Las zonas que se
+     * solapan se unen en una sola.
+     *
+     * @param zona Zona modificada, en coordenadas de la imagen.
+     */
+    public synchronized void marcarSucia(Rectangle zona) {
+        Rectangle nueva = zona.intersection(new Rectangle(0, 0, this.src.getWidth(), this.src.getHeight()));
+        if (nueva.isEmpty()) {
+            return;
+        }
+
+        boolean unida;
+        do {
+            unida = false;
+            for (int i = 0; i < this.sucias.size(); i++) {
+                if (this.sucias.get(i).intersects(nueva)) {
+                    nueva = nueva.union(this.sucias.remove(i));
+                    unida = true;
+                    break;
+                }
+            }
+        } while (unida);
+
+        this.sucias.add(nueva);
+    }
+
+    /**
+     * Marca como modificada la imagen fuente completa.
+     */
+    public void marcarTodo() {
+        marcarSucia(new Rectangle(0, 0, this.src.getWidth(), this.src.getHeight()));
+    }
+
+    /**
+     * Indica si hay zonas modificadas pendientes de actualizar.
+     *
+     * @return true si hay zonas sucias.
+     */
+    public synchronized boolean hayCambios() {
+        return !this.sucias.isEmpty();
+    }
+
+    /**
+     * Vuelve a filtrar las zonas modificadas desde la última actualización.
+     *
+     * @return la imagen de destino actualizada.
+     */
+    public synchronized BufferedImage actualizar() {
+        Rectangle limites = new Rectangle(0, 0, this.src.getWidth(), this.src.getHeight());
+
+        for (Rectangle zona : this.sucias) {
+            if (this.halo < 0) {
+                this.op.filter(this.src, this.dest);
+                break;
+            }
+
+            // Un píxel modificado afecta a los resultados en un radio igual al halo
+            Rectangle salida = ampliar(zona, this.halo).intersection(limites);
+
+            if (this.op instanceof MiBufferedImageOpAdapter) {
+                ((MiBufferedImageOpAdapter) this.op).filter(this.src, this.dest, salida);
+            } else {
+                Rectangle entrada = ampliar(salida, this.halo).intersection(limites);
+                // Como en FiltradoPorTiras, la subimagen empieza en múltiplos de 4
+                // para que el tramado de PosterizarOp coincida con el de la imagen completa
+                entrada.add(entrada.x & ~3, entrada.y & ~3);
+                BufferedImage parcial = this.op.filter(
+                        this.src.getSubimage(entrada.x, entrada.y, entrada.width, entrada.height), null);
+                Raster interior = parcial.getRaster().createChild(salida.x - entrada.x, salida.y - entrada.y,
+                        salida.width, salida.height, salida.x, salida.y, null);
+                this.dest.getRaster().setRect(interior);
+            }
+        }
+
+        this.sucias.clear();
+        return this.dest;
+    }
+
+    /**
+     * Amplía un rectángulo el mismo número de píxeles por cada lado.
+     *
+     * @param r Rectángulo original.
+     * @param margen Píxeles que se amplía por cada lado.
+     * @return Nuevo rectángulo ampliado.
+     */
+    private static Rectangle ampliar(Rectangle r, int margen) {
+        Rectangle ampliado = new Rectangle(r);
+        ampliado.grow(margen, margen);
+        return ampliado;
+    }
+
+    /**
+     * Obtiene la operación que se aplica.
+     *
+     * @return la operación.
+     */
+    public BufferedImageOp getOp() {
+        return op;
+    }
+
+    /**
+     * Obtiene la imagen fuente.
+     *
+     * @return la imagen fuente.
+     */
+    public BufferedImage getSrc() {
+        return src;
+    }
+
+    /**
+     * Obtiene la imagen con el resultado de la operación. Puede no estar al
+     * día si hay zonas sucias pendientes.
+     *
+     * @return la imagen de destino.
+     */
+    public BufferedImage getDest() {
+        return dest;
+    }
+}
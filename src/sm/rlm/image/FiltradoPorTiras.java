@@ -0,0 +1,336 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.LookupOp;
+import java.awt.image.RescaleOp;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import sm.rlm.enums.ModoBorde;
+
+/**
+ * Aplica una operación de imagen sobre ficheros que no caben en memoria,
+ * procesándolos por tiras horizontales.
+ *
+ * Cada tira se lee del fichero de entrada mediante una región fuente del
+ * {@link ImageReader}, se filtra y se escribe en su sitio del fichero de
+ * salida con {@link ImageWriter#replacePixels(java.awt.image.RenderedImage, ImageWriteParam)}.
+ * Así, la memoria necesaria depende del alto de la tira y no del tamaño de la
+ * imagen.
+ *
+ * Para las operaciones de vecindad (convoluciones, {@link MediaOp}) se leen
+ * además unas filas de margen (halo) por encima y por debajo de cada tira, de
+ * modo que el resultado coincide con el de filtrar la imagen completa.
+ *
+ * El formato de salida debe admitir la escritura de una imagen vacía y el
+ * reemplazo de píxeles, como TIFF. La lectura por regiones es eficiente en
+ * formatos organizados en tiras o teselas, como TIFF; otros formatos, como
+ * PNG o JPEG, se pueden leer, pero el lector vuelve a decodificar desde el
+ * principio para cada tira.
+ *
+ * @author rober
+ */
+public class FiltradoPorTiras {
+
+    /**
+     * Alto por defecto (en filas) de cada tira.
+     */
+    public static final int ALTO_TIRA_DEFECTO = 512;
+
+    /**
+     * Las regiones leídas empiezan en una fila múltiplo de este valor, para
+     * que las operaciones que dependen de la posición del píxel (el tramado
+     * de {@link PosterizarOp}, con un patrón de 4x4) den el mismo resultado
+     * que sobre la imagen completa.
+     */
+    private static final int ALINEACION = 4;
+
+    /**
+     * Operación que se aplica a cada tira.
+     */
+    private BufferedImageOp op;
+
+    /**
+     * Filas de margen que se leen por encima y por debajo de cada tira.
+     */
+    private int halo;
+
+    /**
+     * Alto en filas de cada tira.
+     */
+    private int altoTira = ALTO_TIRA_DEFECTO;
+
+    /**
+     * Constructor del filtrado por tiras.
+     *
+     * @param op Operación a aplicar. Debe ser una operación puntual o de
+     * vecindad acotada (véase {@link #calcularHalo(BufferedImageOp)}).
+     * @throws IllegalArgumentException si la operación no se puede aplicar
+     * por tiras.
+     */
+    public FiltradoPorTiras(BufferedImageOp op) {
+        this.halo = calcularHalo(op);
+        if (this.halo < 0) {
+            throw new IllegalArgumentException("La operación no se puede aplicar por tiras");
+        }
+        this.op = op;
+    }
+
+    /**
+     * Filtra un fichero de imagen y guarda el resultado en otro.
+     *
+     * @param entrada Fichero de imagen fuente.
+     * @param salida Fichero de imagen de destino (se sobrescribe).
+     * @param formato Nombre del formato de salida (por ejemplo "tiff").
+     * @throws IOException si hay un error de lectura o escritura, o no hay
+     * lector para el fichero de entrada.
+     * @throws IllegalArgumentException si el formato de salida no admite la
+     * escritura por tiras.
+     */
+    public void filtrar(File entrada, File salida, String formato) throws IOException {
+        salida.delete();
+        try (ImageInputStream iis = ImageIO.createImageInputStream(entrada);
+                ImageOutputStream ios = ImageIO.createImageOutputStream(salida)) {
+            if (iis == null || ios == null) {
+                throw new IOException("No se pueden abrir los ficheros de imagen");
+            }
+            filtrar(iis, ios, formato);
+        }
+    }
+
+    /**
+     * Filtra la primera imagen de un flujo de entrada y la escribe en un
+     * flujo de salida. Los flujos no se cierran.
+     *
+     * @param entrada Flujo de imagen fuente.
+     * @param salida Flujo de imagen de destino.
+     * @param formato Nombre del formato de salida (por ejemplo "tiff").
+     * @throws IOException si hay un error de lectura o escritura, o no hay
+     * lector para la entrada.
+     * @throws IllegalArgumentException si el formato de salida no admite la
+     * escritura por tiras.
+     */
+    public void filtrar(ImageInputStream entrada, ImageOutputStream salida, String formato) throws IOException {
+        ImageReader lector = crearLector(entrada);
+        ImageWriter escritor = crearEscritor(formato, salida);
+
+        try {
+            lector.setInput(entrada, false, true);
+
+            int ancho = lector.getWidth(0);
+            int alto = lector.getHeight(0);
+            ImageReadParam paramLectura = lector.getDefaultReadParam();
+            ImageWriteParam paramEscritura = escritor.getDefaultWriteParam();
+
+            for (int y = 0; y < alto; y += this.altoTira) {
+                int altoActual = Math.min(this.altoTira, alto - y);
+                BufferedImage tira = filtrarTira(lector, paramLectura, ancho, alto, y, altoActual);
+
+                if (y == 0) {
+                    escritor.prepareWriteEmpty(null, ImageTypeSpecifier.createFromRenderedImage(tira),
+                            ancho, alto, null, null, paramEscritura);
+                    if (!escritor.canReplacePixels(0)) {
+                        throw new IllegalArgumentException("El formato " + formato + " no admite escritura por tiras");
+                    }
+                }
+
+                escritor.prepareReplacePixels(0, new Rectangle(0, y, ancho, altoActual));
+                paramEscritura.setDestinationOffset(new Point(0, y));
+                escritor.replacePixels(tira, paramEscritura);
+                escritor.endReplacePixels();
+            }
+
+            escritor.endWriteEmpty();
+        } finally {
+            lector.dispose();
+            escritor.dispose();
+        }
+    }
+
+    /**
+     * Lee una tira con su halo, le aplica la operación y devuelve solo las
+     * filas de la tira.
+     *
+     * @param lector Lector de la imagen fuente.
+     * @param param Parámetros de lectura (se modifica su región fuente).
+     * @param ancho Ancho de la imagen.
+     * @param alto Alto de la imagen.
+     * @param y Primera fila de la tira.
+     * @param altoActual Número de filas de la tira.
+     * @return Tira filtrada.
+     * @throws IOException si hay un error de lectura.
+     */
+    private BufferedImage filtrarTira(ImageReader lector, ImageReadParam param, int ancho, int alto,
+            int y, int altoActual) throws IOException {
+        int inicio = Math.max(0, y - this.halo);
+        inicio -= inicio % ALINEACION;
+        int fin = Math.min(alto, y + altoActual + this.halo);
+
+        param.setSourceRegion(new Rectangle(0, inicio, ancho, fin - inicio));
+        BufferedImage leida = lector.read(0, param);
+        BufferedImage filtrada = this.op.filter(leida, null);
+
+        return filtrada.getSubimage(0, y - inicio, ancho, altoActual);
+    }
+
+    /**
+     * Calcula cuántos píxeles de margen necesita una operación alrededor de
+     * cada píxel (en horizontal y en vertical) para obtener el mismo resultado
+     * que sobre la imagen completa.
+     *
+     * Las operaciones puntuales (las que implementan {@link OperacionPuntual},
+     * {@link LookupOp}, {@link RescaleOp} y {@link ColorConvertOp}) no
+     * necesitan margen; las convoluciones necesitan el radio de su máscara y
+     * las cadenas, la suma del de sus operaciones. Las operaciones con
+     * {@link ModoBorde#WRAP} toman píxeles del borde opuesto de la imagen, por
+     * lo que no se pueden aplicar por tiras.
+     *
+     * @param op Operación de imagen.
+     * @return Píxeles de margen, o -1 si la operación no es de vecindad acotada
+     * o no se conoce (por ejemplo, {@link AffineTransformOp}).
+     */
+    public static int calcularHalo(BufferedImageOp op) {
+        if (op instanceof OperacionPuntual || op instanceof LookupOp
+                || op instanceof RescaleOp || op instanceof ColorConvertOp) {
+            return 0;
+        }
+        if (op instanceof ConvolveOp) {
+            return calcularRadio(((ConvolveOp) op).getKernel());
+        }
+        if (op instanceof ConvolucionOp) {
+            ConvolucionOp convolucion = (ConvolucionOp) op;
+            return (convolucion.getModoBorde() == ModoBorde.WRAP) ? -1
+                    : calcularRadio(convolucion.getKernel());
+        }
+        if (op instanceof MediaOp) {
+            MediaOp media = (MediaOp) op;
+            return (media.getModoBorde() == ModoBorde.WRAP) ? -1 : media.getLado() / 2;
+        }
+        if (op instanceof PerfiladoOp) {
+            return (((PerfiladoOp) op).getModoBorde() == ModoBorde.WRAP) ? -1 : 1;
+        }
+        if (op instanceof CadenaOp) {
+            int total = 0;
+            for (BufferedImageOp paso : ((CadenaOp) op).getOperaciones()) {
+                int h = calcularHalo(paso);
+                if (h < 0) {
+                    return -1;
+                }
+                total += h;
+            }
+            return total;
+        }
+        return -1;
+    }
+
+    /**
+     * Calcula el radio de una máscara de convolución: la mayor distancia,
+     * horizontal o vertical, entre su origen y sus extremos.
+     *
+     * @param k Máscara de convolución.
+     * @return Radio de la máscara.
+     */
+    private static int calcularRadio(Kernel k) {
+        return Math.max(Math.max(k.getXOrigin(), k.getWidth() - 1 - k.getXOrigin()),
+                Math.max(k.getYOrigin(), k.getHeight() - 1 - k.getYOrigin()));
+    }
+
+    /**
+     * Obtiene un lector para el flujo de entrada.
+     *
+     * @param entrada Flujo de imagen fuente.
+     * @return Lector de imagen.
+     * @throws IOException si no hay lector para el formato de la entrada.
+     */
+    private static ImageReader crearLector(ImageInputStream entrada) throws IOException {
+        Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+        if (!lectores.hasNext()) {
+            throw new IOException("Formato de imagen de entrada no soportado");
+        }
+        return lectores.next();
+    }
+
+    /**
+     * Obtiene un escritor del formato indicado que admita la escritura de una
+     * imagen vacía, que después se rellena por tiras.
+     *
+     * @param formato Nombre del formato de salida.
+     * @param salida Flujo de imagen de destino, que se asigna al escritor.
+     * @return Escritor de imagen.
+     * @throws IOException si hay un error al consultar el escritor.
+     * @throws IllegalArgumentException si ningún escritor del formato admite
+     * la escritura por tiras.
+     */
+    private static ImageWriter crearEscritor(String formato, ImageOutputStream salida) throws IOException {
+        Iterator<ImageWriter> escritores = ImageIO.getImageWritersByFormatName(formato);
+        while (escritores.hasNext()) {
+            ImageWriter escritor = escritores.next();
+            escritor.setOutput(salida);
+            if (escritor.canWriteEmpty()) {
+                return escritor;
+            }
+            escritor.dispose();
+        }
+        throw new IllegalArgumentException("El formato " + formato + " no admite escritura por tiras");
+    }
+
+    /**
+     * Obtiene la operación que se aplica a cada tira.
+     *
+     * @return la operación.
+     */
+    public BufferedImageOp getOp() {
+        return op;
+    }
+
+    /**
+     * Obtiene el número de filas de margen que se leen alrededor de cada tira.
+     *
+     * @return el halo.
+     */
+    public int getHalo() {
+        return halo;
+    }
+
+    /**
+     * Obtiene el alto en filas de cada tira.
+     *
+     * @return el alto de tira actual.
+     */
+    public int getAltoTira() {
+        return altoTira;
+    }
+
+    /**
+     * Establece el alto en filas de cada tira. Determina la memoria
+     * necesaria: aproximadamente dos imágenes de ese alto más el halo.
+     *
+     * @param altoTira alto de cada tira.
+     * @throws IllegalArgumentException si el alto es menor que 1.
+     */
+    public void setAltoTira(int altoTira) {
+        if (altoTira < 1) {
+            throw new IllegalArgumentException("El alto de tira debe ser al menos 1");
+        }
+        this.altoTira = altoTira;
+    }
+}
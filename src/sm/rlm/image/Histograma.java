@@ -0,0 +1,267 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Histogramas de una imagen RGB, calculados en una sola pasada.
+ *
+ * Se obtienen a la vez los histogramas de cada canal (R, G y B), el de la
+ * intensidad (media de R, G y B, la misma que usa {@link PopArtOp}) y el de
+ * la "rojez" R - G - B (el criterio de {@link RojoOp}). El recorrido se
+ * reparte por bandas de filas entre varios hilos; cada tarea cuenta sobre sus
+ * propios contadores y los resultados parciales se suman al terminar, sin
+ * sincronización durante el recorrido.
+ *
+ * Los umbrales automáticos a partir de estos histogramas se calculan con
+ * {@link UmbralAutomatico}.
+ *
+ * @author rober
+ */
+public class Histograma {
+
+    /**
+     * Desplazamiento que se suma a R - G - B (de -510 a 255) para obtener su
+     * posición en el histograma de rojez.
+     */
+    public static final int DESPLAZAMIENTO_ROJEZ = 2 * 255;
+
+    /**
+     * Filas mínimas que procesa cada tarea antes de dejar de dividirse.
+     */
+    private static final int FILAS_MINIMAS = 32;
+
+    private final long[] rojo;
+    private final long[] verde;
+    private final long[] azul;
+    private final long[] intensidad;
+    private final long[] rojez;
+    private long total;
+
+    /**
+     * Crea un histograma vacío.
+     */
+    private Histograma() {
+        this.rojo = new long[256];
+        this.verde = new long[256];
+        this.azul = new long[256];
+        this.intensidad = new long[256];
+        this.rojez = new long[DESPLAZAMIENTO_ROJEZ + 256];
+    }
+
+    /**
+     * Calcula los histogramas de una imagen usando el pool común de hilos.
+     *
+     * @param img Imagen a analizar.
+     * @return Histogramas de la imagen.
+     */
+    public static Histograma calcular(BufferedImage img) {
+        return calcular(img, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Calcula los histogramas de una imagen con el número de hilos indicado.
+     *
+     * @param img Imagen a analizar.
+     * @param paralelismo Número de hilos (1 para cálculo secuencial).
+     * @return Histogramas de la imagen.
+     * @throws IllegalArgumentException si el paralelismo es menor que 1.
+     */
+    public static Histograma calcular(BufferedImage img, int paralelismo) {
+        if (paralelismo < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+
+        if (paralelismo == 1) {
+            Histograma h = new Histograma();
+            h.contar(img, 0, img.getHeight());
+            return h;
+        }
+
+        int filasPorTarea = Math.max(FILAS_MINIMAS, img.getHeight() / (4 * paralelismo));
+        TareaHistograma tarea = new TareaHistograma(img, 0, img.getHeight(), filasPorTarea);
+        if (paralelismo == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool().invoke(tarea);
+        }
+        ForkJoinPool pool = new ForkJoinPool(paralelismo);
+        try {
+            return pool.invoke(tarea);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Cuenta los píxeles de un rango de filas de la imagen.
+     *
+     * @param img Imagen a analizar.
+     * @param desde Primera fila (incluida).
+     * @param hasta Última fila (excluida).
+     */
+    private void contar(BufferedImage img, int desde, int hasta) {
+        int ancho = img.getWidth();
+
+        if (MiBufferedImageOpAdapter.esEmpaquetadaInt(img)) {
+            WritableRaster raster = img.getRaster();
+            int[] datos = ((DataBufferInt) raster.getDataBuffer()).getData();
+            for (int y = desde; y < hasta; y++) {
+                int i = MiBufferedImageOpAdapter.getIndicePixel(raster, 0, y);
+                contarFila(datos, i, ancho);
+            }
+        } else {
+            int[] fila = new int[ancho];
+            for (int y = desde; y < hasta; y++) {
+                img.getRGB(0, y, ancho, 1, fila, 0, ancho);
+                contarFila(fila, 0, ancho);
+            }
+        }
+
+        this.total += (long) ancho * (hasta - desde);
+    }
+
+    /**
+     * Cuenta una fila de píxeles empaquetados 0x--RRGGBB.
+     *
+     * @param datos Array con los píxeles.
+     * @param inicio Posición del primer píxel.
+     * @param longitud Número de píxeles.
+     */
+    private void contarFila(int[] datos, int inicio, int longitud) {
+        long[] hr = this.rojo;
+        long[] hg = this.verde;
+        long[] hb = this.azul;
+        long[] hi = this.intensidad;
+        long[] hx = this.rojez;
+
+        for (int k = inicio; k < inicio + longitud; k++) {
+            int p = datos[k];
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            hr[r]++;
+            hg[g]++;
+            hb[b]++;
+            hi[(r + g + b) / 3]++;
+            hx[r - g - b + DESPLAZAMIENTO_ROJEZ]++;
+        }
+    }
+
+    /**
+     * Suma a este histograma los contadores de otro.
+     *
+     * @param otro Histograma parcial.
+     * @return este histograma.
+     */
+    private Histograma sumar(Histograma otro) {
+        for (int i = 0; i < 256; i++) {
+            this.rojo[i] += otro.rojo[i];
+            this.verde[i] += otro.verde[i];
+            this.azul[i] += otro.azul[i];
+            this.intensidad[i] += otro.intensidad[i];
+        }
+        for (int i = 0; i < this.rojez.length; i++) {
+            this.rojez[i] += otro.rojez[i];
+        }
+        this.total += otro.total;
+        return this;
+    }
+
+    /**
+     * Obtiene el histograma del canal rojo.
+     *
+     * @return copia del histograma (256 posiciones).
+     */
+    public long[] getRojo() {
+        return rojo.clone();
+    }
+
+    /**
+     * Obtiene el histograma del canal verde.
+     *
+     * @return copia del histograma (256 posiciones).
+     */
+    public long[] getVerde() {
+        return verde.clone();
+    }
+
+    /**
+     * Obtiene el histograma del canal azul.
+     *
+     * @return copia del histograma (256 posiciones).
+     */
+    public long[] getAzul() {
+        return azul.clone();
+    }
+
+    /**
+     * Obtiene el histograma de la intensidad, (R + G + B) / 3.
+     *
+     * @return copia del histograma (256 posiciones).
+     */
+    public long[] getIntensidad() {
+        return intensidad.clone();
+    }
+
+    /**
+     * Obtiene el histograma de R - G - B. La posición i corresponde al valor
+     * i - {@link #DESPLAZAMIENTO_ROJEZ}.
+     *
+     * @return copia del histograma (766 posiciones).
+     */
+    public long[] getRojez() {
+        return rojez.clone();
+    }
+
+    /**
+     * Obtiene el número de píxeles contados.
+     *
+     * @return número total de píxeles.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Tarea que calcula el histograma de un rango de filas, dividiéndolo por
+     * la mitad mientras sea grande, y suma los histogramas parciales. Las
+     * tareas no se serializan.
+     */
+    @SuppressWarnings("serial")
+    private static class TareaHistograma extends RecursiveTask<Histograma> {
+
+        private final BufferedImage img;
+        private final int desde;
+        private final int hasta;
+        private final int filasPorTarea;
+
+        TareaHistograma(BufferedImage img, int desde, int hasta, int filasPorTarea) {
+            this.img = img;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.filasPorTarea = filasPorTarea;
+        }
+
+        @Override
+        protected Histograma compute() {
+            if (this.hasta - this.desde <= this.filasPorTarea) {
+                Histograma h = new Histograma();
+                h.contar(this.img, this.desde, this.hasta);
+                return h;
+            }
+
+            int medio = (this.desde + this.hasta) >>> 1;
+            TareaHistograma arriba = new TareaHistograma(this.img, this.desde, medio, this.filasPorTarea);
+            TareaHistograma abajo = new TareaHistograma(this.img, medio, this.hasta, this.filasPorTarea);
+            arriba.fork();
+            Histograma h = abajo.compute();
+            return h.sumar(arriba.join());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Almacén de imágenes reutilizables, agrupadas por ancho, alto y tipo.
+ *
+ * Sirve para evitar crear una imagen de destino nueva en cada llamada a
+ * {@code filter}, por ejemplo al previsualizar un filtro de forma repetida.
+ * Las imágenes se piden con {@link #obtener(int, int, int)} o
+ * {@link #obtenerCompatible(BufferedImage)} y, cuando ya no se necesitan, se
+ * devuelven con {@link #devolver(BufferedImage)}. Una imagen devuelta no debe
+ * seguir usándose, ya que se puede entregar a otro usuario.
+ *
+ * Las imágenes obtenidas pueden conservar el contenido de su uso anterior.
+ * Solo se guardan imágenes de los tipos predefinidos de {@link BufferedImage}
+ * que no dependen de una paleta (se descartan {@code TYPE_CUSTOM},
+ * {@code TYPE_BYTE_INDEXED} y {@code TYPE_BYTE_BINARY}). Es seguro usarlo
+ * desde varios hilos.
+ *
+ * @author rober
+ */
+public class ImagenPool {
+
+    /**
+     * Número máximo por defecto de imágenes libres guardadas de cada tamaño y
+     * tipo.
+     */
+    public static final int MAX_LIBRES_DEFECTO = 4;
+
+    /**
+     * Clave de agrupación de las imágenes.
+     */
+    private record Clave(int ancho, int alto, int tipo) {
+    }
+
+    /**
+     * Imágenes libres de cada tamaño y tipo.
+     */
+    private final Map<Clave, ArrayDeque<BufferedImage>> libres = new HashMap<>();
+
+    /**
+     * Número máximo de imágenes libres guardadas de cada tamaño y tipo.
+     */
+    private int maxLibres;
+
+    /**
+     * Constructor del almacén con la capacidad por defecto.
+     */
+    public ImagenPool() {
+        this(MAX_LIBRES_DEFECTO);
+    }
+
+    /**
+     * Constructor del almacén.
+     *
+     * @param maxLibres Número máximo de imágenes libres guardadas de cada
+     * tamaño y tipo. Las que se devuelvan por encima de este número se
+     * descartan.
+     * @throws IllegalArgumentException si el máximo es menor que 1.
+     */
+    public ImagenPool(int maxLibres) {
+        if (maxLibres < 1) {
+            throw new IllegalArgumentException("El máximo de imágenes libres debe ser al menos 1");
+        }
+        this.maxLibres = maxLibres;
+    }
+
+    /**
+     * Obtiene una imagen del tamaño y tipo indicados, reutilizando una libre
+     * si la hay o creando una nueva en otro caso.
+     *
+     * @param ancho Ancho de la imagen.
+     * @param alto Alto de la imagen.
+     * @param tipo Tipo de la imagen (constante de {@link BufferedImage}).
+     * @return Imagen del tamaño y tipo pedidos.
+     * @throws IllegalArgumentException si el tipo no es admitido por el
+     * almacén.
+     */
+    public BufferedImage obtener(int ancho, int alto, int tipo) {
+        if (!esAdmitido(tipo)) {
+            throw new IllegalArgumentException("Tipo de imagen no admitido por el almacén: " + tipo);
+        }
+
+        BufferedImage img = sacar(new Clave(ancho, alto, tipo));
+        return (img != null) ? img : new BufferedImage(ancho, alto, tipo);
+    }
+
+    /**
+     * Obtiene una imagen compatible con otra (mismo tamaño y modelo de
+     * color). Si el tipo de la imagen no es admitido por el almacén, se crea
+     * siempre una nueva.
+     *
+     * @param modelo Imagen de referencia.
+     * @return Imagen compatible con la de referencia.
+     */
+    public BufferedImage obtenerCompatible(BufferedImage modelo) {
+        if (esAdmitido(modelo.getType())) {
+            return obtener(modelo.getWidth(), modelo.getHeight(), modelo.getType());
+        }
+
+        ColorModel cm = modelo.getColorModel();
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(modelo.getWidth(), modelo.getHeight()),
+                cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Devuelve una imagen al almacén para que pueda reutilizarse. Las imágenes
+     * de tipos no admitidos, o que superen el máximo de libres, se descartan.
+     *
+     * @param img Imagen que ya no se va a usar (puede ser {@code null}).
+     */
+    public synchronized void devolver(BufferedImage img) {
+        if (img == null || !esAdmitido(img.getType())) {
+            return;
+        }
+
+        ArrayDeque<BufferedImage> cola = this.libres.computeIfAbsent(
+                new Clave(img.getWidth(), img.getHeight(), img.getType()), k -> new ArrayDeque<>());
+        if (cola.size() < this.maxLibres && !cola.contains(img)) {
+            cola.push(img);
+        }
+    }
+
+    /**
+     * Descarta todas las imágenes libres.
+     */
+    public synchronized void limpiar() {
+        this.libres.clear();
+    }
+
+    /**
+     * Obtiene el número total de imágenes libres guardadas.
+     *
+     * @return número de imágenes libres.
+     */
+    public synchronized int getNumLibres() {
+        int total = 0;
+        for (ArrayDeque<BufferedImage> cola : this.libres.values()) {
+            total += cola.size();
+        }
+        return total;
+    }
+
+    /**
+     * Saca una imagen libre de la clave indicada.
+     *
+     * @param clave Tamaño y tipo buscados.
+     * @return Imagen libre, o {@code null} si no hay ninguna.
+     */
+    private synchronized BufferedImage sacar(Clave clave) {
+        ArrayDeque<BufferedImage> cola = this.libres.get(clave);
+        return (cola != null) ? cola.poll() : null;
+    }
+
+    /**
+     * Indica si el almacén guarda imágenes del tipo indicado.
+     *
+     * @param tipo Tipo de imagen.
+     * @return true si el tipo es predefinido y no usa paleta.
+     */
+    private static boolean esAdmitido(int tipo) {
+        return tipo != BufferedImage.TYPE_CUSTOM
+                && tipo != BufferedImage.TYPE_BYTE_INDEXED
+                && tipo != BufferedImage.TYPE_BYTE_BINARY;
+    }
+}
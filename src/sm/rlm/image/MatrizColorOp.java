@@ -0,0 +1,239 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+/**
+ * Operación que transforma el color de cada píxel con una matriz 3x4.
+ *
+ * Cada componente de destino es una combinación lineal de R, G y B de la
+ * fuente más un desplazamiento, recortada a [0, 255]:
+ *
+ * <pre>
+ * R' = m[0][0]·R + m[0][1]·G + m[0][2]·B + m[0][3]
+ * G' = m[1][0]·R + m[1][1]·G + m[1][2]·B + m[1][3]
+ * B' = m[2][0]·R + m[2][1]·G + m[2][2]·B + m[2][3]
+ * </pre>
+ *
+ * A diferencia de una tabla por canal, cada componente de destino puede
+ * depender de los tres de la fuente, lo que permite un sepia correcto, la
+ * conversión a gris o el intercambio de canales. Los coeficientes se guardan
+ * en punto fijo ({@value #BITS_FRACCION} bits de parte fraccionaria), de
+ * modo que cada píxel se calcula solo con multiplicaciones y sumas enteras.
+ * El alfa se conserva.
+ *
+ * Es equivalente a {@code BandCombineOp}, pero trabaja sobre la imagen y
+ * recorre directamente los arrays de datos de las imágenes de tipo entero.
+ *
+ * @author rober
+ */
+public class MatrizColorOp extends MiPixelOpAdapter {
+
+    /**
+     * Bits de la parte fraccionaria de los coeficientes en punto fijo.
+     */
+    public static final int BITS_FRACCION = 12;
+
+    /**
+     * Máximo valor absoluto admitido para los coeficientes de la matriz.
+     */
+    public static final float MAX_COEFICIENTE = 256;
+
+    /**
+     * Máximo valor absoluto admitido para los desplazamientos de la matriz.
+     */
+    public static final float MAX_DESPLAZAMIENTO = 65536;
+
+    /**
+     * Índice del canal rojo.
+     */
+    public static final int ROJO = 0;
+
+    /**
+     * Índice del canal verde.
+     */
+    public static final int VERDE = 1;
+
+    /**
+     * Índice del canal azul.
+     */
+    public static final int AZUL = 2;
+
+    /**
+     * Matriz original, con 3 filas de 4 columnas.
+     */
+    private final float[][] matriz;
+
+    /**
+     * Matriz en punto fijo, por filas. El desplazamiento incluye el término
+     * de redondeo.
+     */
+    private final int[] coeficientes = new int[12];
+
+    /**
+     * Constructor de la operación.
+     *
+     * @param matriz Matriz de 3 filas (R, G y B de destino) de 3 o 4 columnas
+     * (coeficientes de R, G y B de la fuente y, opcionalmente, el
+     * desplazamiento en unidades de [0, 255]).
+     * @throws IllegalArgumentException si la matriz no tiene el tamaño
+     * indicado o algún valor está fuera de rango.
+     */
+    public MatrizColorOp(float[][] matriz) {
+        if (matriz.length != 3) {
+            throw new IllegalArgumentException("La matriz debe tener 3 filas");
+        }
+
+        this.matriz = new float[3][4];
+        for (int i = 0; i < 3; i++) {
+            if (matriz[i].length != 3 && matriz[i].length != 4) {
+                throw new IllegalArgumentException("Cada fila de la matriz debe tener 3 o 4 columnas");
+            }
+            for (int j = 0; j < matriz[i].length; j++) {
+                float limite = (j < 3) ? MAX_COEFICIENTE : MAX_DESPLAZAMIENTO;
+                if (!(Math.abs(matriz[i][j]) <= limite)) {
+                    throw new IllegalArgumentException("Valor de la matriz fuera de rango: " + matriz[i][j]);
+                }
+                this.matriz[i][j] = matriz[i][j];
+            }
+
+            for (int j = 0; j < 3; j++) {
+                this.coeficientes[4 * i + j] = Math.round(this.matriz[i][j] * (1 << BITS_FRACCION));
+            }
+            this.coeficientes[4 * i + 3] = Math.round(this.matriz[i][3] * (1 << BITS_FRACCION))
+                    + (1 << (BITS_FRACCION - 1));
+        }
+    }
+
+    /**
+     * Crea la operación de sepia estándar, que mezcla los tres canales.
+     *
+     * @return Operación de sepia.
+     */
+    public static MatrizColorOp crearSepia() {
+        return new MatrizColorOp(new float[][]{
+            {0.393f, 0.769f, 0.189f},
+            {0.349f, 0.686f, 0.168f},
+            {0.272f, 0.534f, 0.131f}
+        });
+    }
+
+    /**
+     * Crea una operación de conversión a escala de grises con los pesos de
+     * luminancia de la recomendación BT.601. La imagen resultante sigue
+     * siendo en color, con R = G = B.
+     *
+     * @return Operación de conversión a gris.
+     */
+    public static MatrizColorOp crearEscalaGrises() {
+        float[] luminancia = {0.299f, 0.587f, 0.114f};
+        return new MatrizColorOp(new float[][]{luminancia, luminancia, luminancia});
+    }
+
+    /**
+     * Crea una operación que reordena los canales de la imagen.
+     *
+     * Por ejemplo, {@code crearIntercambioCanales(AZUL, VERDE, ROJO)}
+     * intercambia el rojo y el azul.
+     *
+     * @param origenRojo Canal de la fuente que pasa al rojo.
+     * @param origenVerde Canal de la fuente que pasa al verde.
+     * @param origenAzul Canal de la fuente que pasa al azul.
+     * @return Operación de intercambio de canales.
+     * @throws IllegalArgumentException si algún canal no es {@link #ROJO},
+     * {@link #VERDE} o {@link #AZUL}.
+     */
+    public static MatrizColorOp crearIntercambioCanales(int origenRojo, int origenVerde, int origenAzul) {
+        int[] origenes = {origenRojo, origenVerde, origenAzul};
+        float[][] matriz = new float[3][3];
+        for (int i = 0; i < 3; i++) {
+            if (origenes[i] < ROJO || origenes[i] > AZUL) {
+                throw new IllegalArgumentException("Canal desconocido: " + origenes[i]);
+            }
+            matriz[i][origenes[i]] = 1;
+        }
+        return new MatrizColorOp(matriz);
+    }
+
+    /**
+     * Aplica la matriz sobre un píxel.
+     *
+     * @param argb Color del píxel fuente (0xAARRGGBB).
+     * @return Color del píxel resultante (0xAARRGGBB).
+     */
+    @Override
+    public int filtrarPixel(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int[] m = this.coeficientes;
+
+        int nr = (m[0] * r + m[1] * g + m[2] * b + m[3]) >> BITS_FRACCION;
+        int ng = (m[4] * r + m[5] * g + m[6] * b + m[7]) >> BITS_FRACCION;
+        int nb = (m[8] * r + m[9] * g + m[10] * b + m[11]) >> BITS_FRACCION;
+
+        return (argb & 0xFF000000)
+                | (recortar(nr) << 16)
+                | (recortar(ng) << 8)
+                | recortar(nb);
+    }
+
+    /**
+     * Aplica la matriz sobre una fila de píxeles, con los coeficientes en
+     * variables locales y sin llamadas por píxel.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles a procesar.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído.
+     */
+    @Override
+    protected void filtrarFila(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa) {
+        int[] m = this.coeficientes;
+        int m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3];
+        int m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+        int m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11];
+
+        for (int k = 0; k < longitud; k++) {
+            int argb = src[srcPos + k] | alfa;
+            int r = (argb >> 16) & 0xFF;
+            int g = (argb >> 8) & 0xFF;
+            int b = argb & 0xFF;
+
+            int nr = (m0 * r + m1 * g + m2 * b + m3) >> BITS_FRACCION;
+            int ng = (m4 * r + m5 * g + m6 * b + m7) >> BITS_FRACCION;
+            int nb = (m8 * r + m9 * g + m10 * b + m11) >> BITS_FRACCION;
+
+            dest[destPos + k] = (argb & 0xFF000000)
+                    | (Math.min(255, Math.max(0, nr)) << 16)
+                    | (Math.min(255, Math.max(0, ng)) << 8)
+                    | Math.min(255, Math.max(0, nb));
+        }
+    }
+
+    /**
+     * Recorta un valor al rango [0, 255].
+     *
+     * @param v Valor a recortar.
+     * @return Valor recortado.
+     */
+    private static int recortar(int v) {
+        return Math.min(255, Math.max(0, v));
+    }
+
+    /**
+     * Obtiene la matriz de la operación.
+     *
+     * @return copia de la matriz, de 3 filas y 4 columnas.
+     */
+    public float[][] getMatriz() {
+        float[][] copia = new float[3][];
+        for (int i = 0; i < 3; i++) {
+            copia[i] = this.matriz[i].clone();
+        }
+        return copia;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import sm.rlm.enums.ModoBorde;
+
+/**
+ * Filtro de emborronamiento tipo media (filtro de caja) de tamaño arbitrario.
+ *
+ * Produce el mismo efecto que una convolución con la máscara de
+ * {@link MiKernelProducer#createKernelMedia(int)}, pero aprovecha que la media
+ * es separable y usa sumas acumuladas: primero por filas y después por
+ * columnas, sumando el valor que entra en la ventana y restando el que sale.
+ * Así el coste por píxel es constante, independientemente del tamaño.
+ *
+ * En los bordes de la imagen los píxeles de fuera se obtienen según un
+ * {@link ModoBorde} (por defecto, repitiendo el píxel más cercano), en lugar
+ * de dejar un marco sin procesar como {@code ConvolveOp}. Se procesan todas
+ * las bandas de la imagen, incluido el alfa.
+ *
+ * @author rober
+ */
+public class MediaOp extends MiBufferedImageOpAdapter {
+
+    /**
+     * Número mínimo de ventanas que caben en el alto de cada tesela.
+     */
+    private static final int VENTANAS_POR_TESELA = 4;
+
+    /**
+     * Lado (ancho y alto) de la ventana de la media.
+     */
+    private int lado;
+
+    /**
+     * Modo de obtener los píxeles de fuera de la imagen.
+     */
+    private ModoBorde modoBorde;
+
+    /**
+     * Constructor del filtro media, repitiendo el píxel del borde.
+     *
+     * @param lado Tamaño de la ventana cuadrada de la media (por ejemplo, 5
+     * para una media 5x5).
+     * @throws IllegalArgumentException si el lado es menor que 1.
+     */
+    public MediaOp(int lado) {
+        this(lado, ModoBorde.CLAMP);
+    }
+
+    /**
+     * Constructor del filtro media.
+     *
+     * @param lado Tamaño de la ventana cuadrada de la media (por ejemplo, 5
+     * para una media 5x5).
+     * @param modoBorde Modo de obtener los píxeles de fuera de la imagen.
+     * @throws IllegalArgumentException si el lado es menor que 1.
+     */
+    public MediaOp(int lado, ModoBorde modoBorde) {
+        if (lado < 1) {
+            throw new IllegalArgumentException("El lado debe ser al menos 1");
+        }
+        this.lado = lado;
+        this.modoBorde = modoBorde;
+    }
+
+    /**
+     * Aplica el filtro media sobre una región de la imagen.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible.
+     * @param roi Región a procesar.
+     * @return Imagen resultante con el filtro aplicado.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @throws IllegalArgumentException si fuente y destino son la misma
+     * imagen.
+     */
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dest, Rectangle roi) {
+        if (src != null && src == dest) {
+            throw new IllegalArgumentException("src and dest must be different images");
+        }
+        return super.filter(src, dest, roi);
+    }
+
+    /**
+     * Obtiene el alto de tesela que se usa al filtrar: el configurado,
+     * redondeado a un múltiplo del lado de la ventana y de al menos
+     * {@link #VENTANAS_POR_TESELA} ventanas.
+     *
+     * Cada tesela empieza sumando las {@code lado} filas de su primera
+     * ventana, por lo que con teselas bajas y ventanas grandes se leerían
+     * muchas más filas que en una sola pasada. Con este alto, cada tesela
+     * lee como mucho un 25% más de filas de las que produce, sea cual sea el
+     * tamaño de la ventana.
+     *
+     * @return alto de tesela que se usa al filtrar.
+     */
+    @Override
+    protected int getAltoTeselaEfectivo() {
+        long minimo = Math.max(getAltoTesela(), (long) VENTANAS_POR_TESELA * this.lado);
+        long alto = (minimo + this.lado - 1) / this.lado * this.lado;
+        return (int) Math.min(alto, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Aplica el filtro media sobre una tesela de la imagen.
+     *
+     * Mantiene un anillo con las sumas por filas de las filas que caen dentro
+     * de la ventana y un acumulado por columnas que se actualiza al avanzar
+     * cada fila. Las sumas se guardan en enteros largos, de modo que no se
+     * desbordan aunque la ventana sea grande y las muestras de 16 bits.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    @Override
+    protected void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        WritableRaster srcRaster = src.getRaster();
+        WritableRaster destRaster = dest.getRaster();
+
+        int numBandas = srcRaster.getNumBands();
+        int arriba = this.lado / 2;
+        int abajo = this.lado - 1 - arriba;
+        long n = (long) this.lado * this.lado;
+        int longitud = tesela.width * numBandas;
+
+        long[][] anillo = new long[this.lado][longitud];
+        long[] columnas = new long[longitud];
+        int[] fila = new int[(tesela.width + this.lado - 1) * numBandas];
+        int[] salida = new int[longitud];
+
+        for (int k = -arriba; k <= abajo; k++) {
+            long[] suma = anillo[Math.floorMod(tesela.y + k, this.lado)];
+            sumarFila(srcRaster, tesela, tesela.y + k, fila, suma);
+            for (int i = 0; i < longitud; i++) {
+                columnas[i] += suma[i];
+            }
+        }
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            for (int i = 0; i < longitud; i++) {
+                salida[i] = (int) ((columnas[i] + n / 2) / n);
+            }
+            destRaster.setPixels(tesela.x, y, tesela.width, 1, salida);
+
+            if (y + 1 < tesela.y + tesela.height) {
+                // La fila y - arriba sale de la ventana y entra la y + 1 + abajo,
+                // que ocupa su mismo hueco del anillo
+                long[] suma = anillo[Math.floorMod(y - arriba, this.lado)];
+                for (int i = 0; i < longitud; i++) {
+                    columnas[i] -= suma[i];
+                }
+                sumarFila(srcRaster, tesela, y + 1 + abajo, fila, suma);
+                for (int i = 0; i < longitud; i++) {
+                    columnas[i] += suma[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcula, para cada columna de la tesela, la suma horizontal de la
+     * ventana centrada en ella sobre una fila de la imagen.
+     *
+     * Solo se leen de la imagen las columnas que cubren las ventanas de la
+     * tesela. Las que quedan fuera de la imagen se obtienen según el modo de
+     * borde.
+     *
+     * @param raster Raster fuente.
+     * @param tesela Región de la imagen a procesar.
+     * @param y Fila de la imagen (se ajusta según el modo de borde si queda
+     * fuera).
+     * @param fila Array auxiliar con capacidad para el ancho de la tesela más
+     * el de la ventana menos uno.
+     * @param suma Array donde se guardan las sumas, una por muestra de la
+     * tesela.
+     */
+    private void sumarFila(WritableRaster raster, Rectangle tesela, int y, int[] fila, long[] suma) {
+        int ancho = raster.getWidth();
+        int numBandas = raster.getNumBands();
+        int izquierda = this.lado / 2;
+        int derecha = this.lado - 1 - izquierda;
+        int yAjustada = this.modoBorde.ajustar(y, raster.getHeight());
+
+        // fila[0] corresponde a la columna inicio; las columnas de la imagen
+        // entre desde y hasta se leen con una sola llamada
+        int inicio = tesela.x - izquierda;
+        int fin = tesela.x + tesela.width + derecha;
+        int desde = Math.max(inicio, 0);
+        int hasta = Math.min(fin, ancho);
+
+        raster.getPixels(desde, yAjustada, hasta - desde, 1, fila);
+        if (desde > inicio) {
+            System.arraycopy(fila, 0, fila, (desde - inicio) * numBandas, (hasta - desde) * numBandas);
+        }
+        for (int x = inicio; x < desde; x++) {
+            leerBorde(raster, x, yAjustada, inicio, desde, hasta, fila);
+        }
+        for (int x = hasta; x < fin; x++) {
+            leerBorde(raster, x, yAjustada, inicio, desde, hasta, fila);
+        }
+
+        for (int b = 0; b < numBandas; b++) {
+            long acumulado = 0;
+            for (int k = 0; k < this.lado; k++) {
+                acumulado += fila[k * numBandas + b];
+            }
+
+            for (int x = 0; x < tesela.width; x++) {
+                suma[x * numBandas + b] = acumulado;
+                if (x + 1 < tesela.width) {
+                    acumulado += fila[(x + this.lado) * numBandas + b] - fila[x * numBandas + b];
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene, según el modo de borde, las muestras de una columna que queda
+     * fuera de la imagen. Si la columna de la imagen que le corresponde ya se
+     * ha leído, se copia; si no, se lee del raster.
+     *
+     * @param raster Raster fuente.
+     * @param x Columna fuera de la imagen.
+     * @param y Fila de la imagen, ya ajustada.
+     * @param inicio Columna correspondiente a la posición 0 de la fila.
+     * @param desde Primera columna de la imagen leída.
+     * @param hasta Columna siguiente a la última leída.
+     * @param fila Muestras de la fila, desde la columna inicio.
+     */
+    private void leerBorde(WritableRaster raster, int x, int y, int inicio, int desde, int hasta, int[] fila) {
+        int numBandas = raster.getNumBands();
+        int ajustada = this.modoBorde.ajustar(x, raster.getWidth());
+        int destino = (x - inicio) * numBandas;
+
+        if (ajustada >= desde && ajustada < hasta) {
+            System.arraycopy(fila, (ajustada - inicio) * numBandas, fila, destino, numBandas);
+        } else {
+            int[] pixel = raster.getPixel(ajustada, y, (int[]) null);
+            System.arraycopy(pixel, 0, fila, destino, numBandas);
+        }
+    }
+
+    /**
+     * Obtiene el lado de la ventana de la media.
+     *
+     * @return el lado de la ventana.
+     */
+    public int getLado() {
+        return lado;
+    }
+
+    /**
+     * Obtiene el modo de obtener los píxeles de fuera de la imagen.
+     *
+     * @return el modo de borde.
+     */
+    public ModoBorde getModoBorde() {
+        return modoBorde;
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import sm.image.BufferedImageOpAdapter;
+
+/**
+ * Clase base para las operaciones de imagen de la librería que se aplican por
+ * teselas.
+ *
+ * La imagen se divide en bandas horizontales de filas (teselas) que se
+ * procesan de forma independiente. Por defecto las teselas se recorren de
+ * forma secuencial; si se indica un paralelismo mayor que 1, se reparten entre
+ * los hilos de un {@link ForkJoinPool}. Como cada píxel de destino depende
+ * únicamente de la imagen fuente, el resultado es idéntico en ambos modos.
+ *
+ * Las subclases solo tienen que implementar
+ * {@link #filtrarTesela(BufferedImage, BufferedImage, Rectangle)}. Para
+ * recorrer directamente los arrays de datos de la imagen, se proporcionan
+ * métodos auxiliares que identifican los formatos de raster más habituales.
+ *
+ * Si se asigna un {@link ImagenPool}, las imágenes de destino que haya que
+ * crear se toman de él; quien las reciba puede devolverlas al almacén cuando
+ * ya no las necesite.
+ *
+ * @author rober
+ */
+public abstract class MiBufferedImageOpAdapter extends BufferedImageOpAdapter {
+
+    /**
+     * Alto por defecto (en filas) de cada tesela.
+     */
+    public static final int ALTO_TESELA_DEFECTO = 64;
+
+    /**
+     * Número máximo de hilos: el de procesadores disponibles.
+     */
+    private static final int MAX_HILOS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Pools compartidos por todas las operaciones, uno por nivel de
+     * paralelismo, para no crear hilos en cada llamada a filter. Como el
+     * nivel se limita a {@link #MAX_HILOS}, nunca hay más de ese número de
+     * pools, y sus hilos son de tipo daemon y terminan cuando están
+     * inactivos.
+     */
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Número de hilos usados para procesar las teselas (1 = secuencial).
+     */
+    private int paralelismo = 1;
+
+    /**
+     * Alto en filas de cada tesela.
+     */
+    private int altoTesela = ALTO_TESELA_DEFECTO;
+
+    /**
+     * Almacén del que se toman las imágenes de destino ({@code null} para
+     * crearlas siempre nuevas).
+     */
+    private ImagenPool poolImagenes = null;
+
+    /**
+     * Aplica la operación sobre una imagen, tesela a tesela.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible o se toma del almacén de imágenes, si lo hay.
+     * @return Imagen resultante con el filtro aplicado.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     */
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
+        if (src == null) {
+            throw new NullPointerException("src image is null");
+        }
+
+        return filter(src, dest, new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+    }
+
+    /**
+     * Aplica la operación solo sobre una región de la imagen. Los píxeles de
+     * dentro se calculan igual que al filtrar la imagen completa (las
+     * operaciones de vecindad leen de la fuente los píxeles vecinos que
+     * necesiten, aunque queden fuera de la región). Los de fuera no se
+     * modifican, por lo que normalmente se pasa un destino ya filtrado del
+     * que solo hay que actualizar una parte.
+     *
+     * Si el destino es {@code null}, los píxeles de fuera de la región quedan
+     * a cero, tanto si la imagen se crea nueva como si se toma del almacén.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible o se toma del almacén de imágenes, si lo hay.
+     * @param roi Región a procesar. Se recorta a los límites de la imagen.
+     * @return Imagen resultante con el filtro aplicado en la región.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     */
+    public BufferedImage filter(BufferedImage src, BufferedImage dest, Rectangle roi) {
+        if (src == null) {
+            throw new NullPointerException("src image is null");
+        }
+
+        Rectangle limites = new Rectangle(0, 0, src.getWidth(), src.getHeight());
+        Rectangle region = roi.intersection(limites);
+
+        if (dest == null) {
+            if (this.poolImagenes != null) {
+                dest = this.poolImagenes.obtenerCompatible(src);
+                // Puede conservar el contenido de su uso anterior
+                if (!region.equals(limites)) {
+                    limpiarFuera(dest, region);
+                }
+            } else {
+                dest = createCompatibleDestImage(src, null);
+            }
+        }
+
+        filtrarRegion(src, dest, region);
+
+        return dest;
+    }
+
+    /**
+     * Pone a cero los píxeles de una imagen que quedan fuera de una región.
+     *
+     * @param img Imagen a limpiar.
+     * @param region Región que se conserva.
+     */
+    private static void limpiarFuera(BufferedImage img, Rectangle region) {
+        WritableRaster raster = img.getRaster();
+        int ancho = raster.getWidth();
+        int[] ceros = new int[ancho * raster.getNumBands()];
+        int finX = region.x + region.width;
+        boolean vacia = region.isEmpty();
+
+        for (int y = 0; y < raster.getHeight(); y++) {
+            if (vacia || y < region.y || y >= region.y + region.height) {
+                raster.setPixels(0, y, ancho, 1, ceros);
+            } else {
+                if (region.x > 0) {
+                    raster.setPixels(0, y, region.x, 1, ceros);
+                }
+                if (finX < ancho) {
+                    raster.setPixels(finX, y, ancho - finX, 1, ceros);
+                }
+            }
+        }
+    }
+
+    /**
+     * Divide la región indicada en teselas y las procesa, de forma secuencial
+     * o en paralelo según el paralelismo configurado.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param region Región de la imagen a procesar.
+     */
+    protected void filtrarRegion(BufferedImage src, BufferedImage dest, Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+
+        int alto = getAltoTeselaEfectivo();
+        int numTeselas = (region.height + alto - 1) / alto;
+        int hilos = Math.min(this.paralelismo, MAX_HILOS);
+
+        if (hilos <= 1 || numTeselas == 1) {
+            for (int i = 0; i < numTeselas; i++) {
+                filtrarTesela(src, dest, getTesela(region, i, alto));
+            }
+        } else {
+            getPool(hilos).invoke(new TareaTeselas(src, dest, region, alto, 0, numTeselas));
+        }
+    }
+
+    /**
+     * Obtiene el alto en filas con el que se divide la imagen al filtrar. Por
+     * defecto es el alto de tesela configurado; las operaciones cuyo coste por
+     * tesela dependa de su alto pueden redefinirlo para ajustarlo.
+     *
+     * @return alto de tesela que se usa al filtrar (al menos 1).
+     */
+    protected int getAltoTeselaEfectivo() {
+        return this.altoTesela;
+    }
+
+    /**
+     * Aplica la operación sobre una tesela de la imagen.
+     *
+     * Las implementaciones solo deben escribir en los píxeles de destino
+     * incluidos en la tesela, ya que otras teselas pueden estar procesándose
+     * a la vez.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Rectángulo de la imagen a procesar.
+     */
+    protected abstract void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela);
+
+    /**
+     * Calcula el rectángulo de la tesela i-ésima dentro de una región.
+     *
+     * @param region Región dividida en teselas.
+     * @param i Índice de la tesela.
+     * @param altoTesela Alto de las teselas.
+     * @return Rectángulo de la tesela.
+     */
+    private static Rectangle getTesela(Rectangle region, int i, int altoTesela) {
+        int y = region.y + i * altoTesela;
+        int alto = Math.min(altoTesela, region.y + region.height - y);
+        return new Rectangle(region.x, y, region.width, alto);
+    }
+
+    /**
+     * Obtiene el pool compartido para el nivel de paralelismo indicado.
+     * Para el nivel del pool común se usa este.
+     *
+     * @param paralelismo Número de hilos del pool, entre 2 y
+     * {@link #MAX_HILOS}.
+     * @return Pool de hilos.
+     */
+    private static ForkJoinPool getPool(int paralelismo) {
+        if (paralelismo == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(paralelismo, ForkJoinPool::new);
+    }
+
+    /**
+     * Indica si la imagen usa píxeles empaquetados en enteros con el formato
+     * estándar 0xAARRGGBB ({@code TYPE_INT_RGB} o {@code TYPE_INT_ARGB}).
+     *
+     * @param img Imagen a comprobar.
+     * @return true si los datos se pueden recorrer como un {@code int[]}.
+     */
+    protected static boolean esEmpaquetadaInt(BufferedImage img) {
+        int tipo = img.getType();
+        return tipo == BufferedImage.TYPE_INT_RGB || tipo == BufferedImage.TYPE_INT_ARGB;
+    }
+
+    /**
+     * Indica si la imagen usa muestras de 8 bits entrelazadas en un array de
+     * bytes ({@code TYPE_3BYTE_BGR} o {@code TYPE_4BYTE_ABGR}).
+     *
+     * @param img Imagen a comprobar.
+     * @return true si los datos se pueden recorrer como un {@code byte[]}.
+     */
+    protected static boolean esEntrelazadaByte(BufferedImage img) {
+        int tipo = img.getType();
+        return tipo == BufferedImage.TYPE_3BYTE_BGR || tipo == BufferedImage.TYPE_4BYTE_ABGR;
+    }
+
+    /**
+     * Calcula la posición del píxel (x, y) dentro del array de datos del
+     * raster. Tiene en cuenta el desplazamiento de los rasters hijos (por
+     * ejemplo, los de {@code BufferedImage.getSubimage}).
+     *
+     * Para rasters empaquetados la posición corresponde al entero del píxel;
+     * para rasters entrelazados, a la primera muestra del píxel (sin sumar el
+     * desplazamiento de banda).
+     *
+     * @param raster Raster de la imagen.
+     * @param x Coordenada x del píxel.
+     * @param y Coordenada y del píxel.
+     * @return Índice del píxel dentro del array de datos.
+     * @throws IllegalArgumentException si el modelo de muestras no está
+     * soportado.
+     */
+    protected static int getIndicePixel(Raster raster, int x, int y) {
+        SampleModel sm = raster.getSampleModel();
+        int xs = x - raster.getSampleModelTranslateX();
+        int ys = y - raster.getSampleModelTranslateY();
+        int offset = raster.getDataBuffer().getOffset();
+
+        if (sm instanceof SinglePixelPackedSampleModel) {
+            return offset + ys * ((SinglePixelPackedSampleModel) sm).getScanlineStride() + xs;
+        } else if (sm instanceof ComponentSampleModel) {
+            ComponentSampleModel csm = (ComponentSampleModel) sm;
+            return offset + ys * csm.getScanlineStride() + xs * csm.getPixelStride();
+        }
+        throw new IllegalArgumentException("Modelo de muestras no soportado");
+    }
+
+    /**
+     * Obtiene el valor máximo de las muestras de cada banda de un raster.
+     *
+     * @param raster Raster de la imagen.
+     * @return valor máximo de cada banda, o {@code null} si todas las bandas
+     * son de 8 bits y no hace falta escalarlas.
+     * @throws IllegalArgumentException si alguna banda tiene más de 16 bits.
+     */
+    protected static int[] getMaximos(Raster raster) {
+        int[] tamanos = raster.getSampleModel().getSampleSize();
+        int[] maximos = new int[tamanos.length];
+        boolean escalar = false;
+
+        for (int b = 0; b < tamanos.length; b++) {
+            if (tamanos[b] > 16) {
+                throw new IllegalArgumentException("Muestras de más de 16 bits no soportadas");
+            }
+            maximos[b] = (1 << tamanos[b]) - 1;
+            escalar |= tamanos[b] != 8;
+        }
+        return escalar ? maximos : null;
+    }
+
+    /**
+     * Escala en el sitio las muestras de una fila entre su profundidad y 8
+     * bits, redondeando al valor más cercano.
+     *
+     * @param fila Muestras de la fila, con las bandas entrelazadas.
+     * @param maximos Valor máximo de cada banda a su profundidad.
+     * @param a8Bits true para pasar de su profundidad a 8 bits, false para
+     * pasar de 8 bits a su profundidad.
+     */
+    protected static void escalarMuestras(int[] fila, int[] maximos, boolean a8Bits) {
+        int numBandas = maximos.length;
+        for (int b = 0; b < numBandas; b++) {
+            int max = maximos[b];
+            if (max == 255) {
+                continue;
+            }
+            if (a8Bits) {
+                for (int i = b; i < fila.length; i += numBandas) {
+                    fila[i] = (fila[i] * 255 + max / 2) / max;
+                }
+            } else {
+                for (int i = b; i < fila.length; i += numBandas) {
+                    fila[i] = (fila[i] * max + 127) / 255;
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene el número de hilos usados para procesar las teselas.
+     *
+     * @return el paralelismo actual (1 si es secuencial).
+     */
+    public int getParalelismo() {
+        return paralelismo;
+    }
+
+    /**
+     * Establece el número de hilos usados para procesar las teselas. Al
+     * filtrar, se usan como mucho tantos hilos como procesadores haya.
+     *
+     * @param paralelismo número de hilos (1 para procesado secuencial).
+     * @throws IllegalArgumentException si el paralelismo es menor que 1.
+     */
+    public void setParalelismo(int paralelismo) {
+        if (paralelismo < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+        this.paralelismo = paralelismo;
+    }
+
+    /**
+     * Obtiene el alto en filas de cada tesela.
+     *
+     * @return el alto de tesela actual.
+     */
+    public int getAltoTesela() {
+        return altoTesela;
+    }
+
+    /**
+     * Establece el alto en filas de cada tesela.
+     *
+     * @param altoTesela número de filas por tesela.
+     * @throws IllegalArgumentException si el alto es menor que 1.
+     */
+    public void setAltoTesela(int altoTesela) {
+        if (altoTesela < 1) {
+            throw new IllegalArgumentException("El alto de tesela debe ser al menos 1");
+        }
+        this.altoTesela = altoTesela;
+    }
+
+    /**
+     * Obtiene el almacén del que se toman las imágenes de destino.
+     *
+     * @return el almacén, o {@code null} si las imágenes se crean siempre
+     * nuevas.
+     */
+    public ImagenPool getPoolImagenes() {
+        return poolImagenes;
+    }
+
+    /**
+     * Establece el almacén del que se toman las imágenes de destino cuando
+     * {@code filter} se llama sin destino.
+     *
+     * @param poolImagenes almacén de imágenes, o {@code null} para crearlas
+     * siempre nuevas.
+     */
+    public void setPoolImagenes(ImagenPool poolImagenes) {
+        this.poolImagenes = poolImagenes;
+    }
+
+    /**
+     * Tarea que procesa un rango de teselas, dividiéndolo por la mitad hasta
+     * quedarse con una sola. Las tareas no se serializan.
+     */
+    @SuppressWarnings("serial")
+    private class TareaTeselas extends RecursiveAction {
+
+        private final BufferedImage src;
+        private final BufferedImage dest;
+        private final Rectangle region;
+        private final int alto;
+        private final int desde;
+        private final int hasta;
+
+        TareaTeselas(BufferedImage src, BufferedImage dest, Rectangle region, int alto, int desde, int hasta) {
+            this.src = src;
+            this.dest = dest;
+            this.region = region;
+            this.alto = alto;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde == 1) {
+                filtrarTesela(src, dest, getTesela(region, desde, alto));
+            } else {
+                int mitad = (desde + hasta) >>> 1;
+                invokeAll(new TareaTeselas(src, dest, region, alto, desde, mitad),
+                        new TareaTeselas(src, dest, region, alto, mitad, hasta));
+            }
+        }
+    }
+}
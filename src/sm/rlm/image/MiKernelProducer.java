@@ -4,7 +4,10 @@
  */
 package sm.rlm.image;
 
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
+import java.util.List;
 
 /**
  * Clase utilitaria para generar máscaras de convolución (Kernel) personalizadas,
@@ -14,6 +17,12 @@ import java.awt.image.Kernel;
  * Esta clase está pensada como complemento a KernelProducer de sm.image, para 
  * incluir máscaras personalizadas no contempladas en dicho paquete.
  * 
+ * Las máscaras y las operaciones {@code ConvolveOp} generadas se guardan en una
+ * caché acotada, de modo que llamadas repetidas con los mismos parámetros
+ * devuelven la misma instancia compartida. Se pueden compartir porque ninguna
+ * de las dos se puede modificar: {@code Kernel} y {@code ConvolveOp} solo
+ * entregan copias de sus datos.
+ * 
  * @author rober
  */
 public class MiKernelProducer {
@@ -24,6 +33,12 @@ public class MiKernelProducer {
     /** Máscara predefinida de emborronamiento tipo media 7x7 */
     public static final int TYPE_MEDIA_7x7 = 1;
     
+    /** Número máximo de máscaras y operaciones guardadas en la caché */
+    public static final int CAPACIDAD_CACHE = 64;
+    
+    /** Caché de máscaras y operaciones, indexada por tipo y parámetros */
+    private static final CacheProductor<List<Object>, Object> CACHE = new CacheProductor<>(CAPACIDAD_CACHE);
+    
     /**
      * Crea un Kernel basado en el tipo solicitado.
      * @param type Tipo de kernel, definido como constante (por ejemplo TYPE_MEDIA_5x5).
@@ -41,6 +56,28 @@ public class MiKernelProducer {
         }
     }
     
+    /**
+     * Crea la operación de filtrado más eficiente para el tipo de máscara
+     * solicitado.
+     *
+     * Las máscaras de tipo media se resuelven con {@link MediaOp}, cuyo coste
+     * por píxel no depende del tamaño de la máscara.
+     *
+     * @param type Tipo de kernel, definido como constante (por ejemplo TYPE_MEDIA_5x5).
+     * @return Operación que aplica la máscara solicitada.
+     * @throws IllegalArgumentException si el tipo no está soportado.
+     */
+    public static BufferedImageOp createKernelOp(int type) {
+        switch (type) {
+            case TYPE_MEDIA_5x5:
+                return new MediaOp(5);
+            case TYPE_MEDIA_7x7:
+                return new MediaOp(7);
+            default:
+                throw new IllegalArgumentException("Kernel desconocido");
+        }
+    }
+    
     /**
      * Crea un Kernel para un filtro media de tamaño personalizado.
      * El kernel es una matriz cuadrada con todos sus valores iguales, de forma
@@ -51,15 +88,17 @@ public class MiKernelProducer {
      * @throws IllegalArgumentException si el tamaño no es válido.
      */
     public static Kernel createKernelMedia(int size) {
-        int n = size * size;
-        float valor = 1.0f / n;
-        float filtroMedia[] = new float[n];
-        
-        for (int i = 0; i < n; i++) {
-            filtroMedia[i] = valor;
-        }
-        
-        return new Kernel(size, size, filtroMedia);
+        return (Kernel) CACHE.obtener(List.of("media", size), () -> {
+            int n = size * size;
+            float valor = 1.0f / n;
+            float filtroMedia[] = new float[n];
+
+            for (int i = 0; i < n; i++) {
+                filtroMedia[i] = valor;
+            }
+
+            return new Kernel(size, size, filtroMedia);
+        });
     }
     
     /**
@@ -69,8 +108,61 @@ public class MiKernelProducer {
      * @return Kernel 3x3 con la máscara de realce calculada.
      */
     public static Kernel createKernelPerfilado(float a) {
-        float filtroPerfilado[] = {0.0f, -a, 0.0f, -a, 4.0f*a + 1.0f, -a, 0.0f, -a, 0.0f};
+        return (Kernel) CACHE.obtener(List.of("perfilado", a), () -> {
+            float filtroPerfilado[] = {0.0f, -a, 0.0f, -a, 4.0f*a + 1.0f, -a, 0.0f, -a, 0.0f};
 
-        return new Kernel(3, 3, filtroPerfilado);
+            return new Kernel(3, 3, filtroPerfilado);
+        });
+    }
+    
+    /**
+     * Crea una operación de convolución para un filtro media de tamaño
+     * personalizado.
+     *
+     * @param size Tamaño del kernel.
+     * @return Operación {@code ConvolveOp} compartida con la máscara media.
+     */
+    public static ConvolveOp createConvolveOpMedia(int size) {
+        return (ConvolveOp) CACHE.obtener(List.of("opMedia", size), 
+                () -> new ConvolveOp(createKernelMedia(size)));
+    }
+    
+    /**
+     * Crea una operación de convolución para perfilado según un parámetro a.
+     *
+     * Para imágenes grandes es preferible {@link PerfiladoOp}, que aplica la
+     * misma máscara con aritmética entera y sin perder el borde.
+     *
+     * @param a Parámetro de perfilado.
+     * @return Operación {@code ConvolveOp} compartida con la máscara de realce.
+     */
+    public static ConvolveOp createConvolveOpPerfilado(float a) {
+        return (ConvolveOp) CACHE.obtener(List.of("opPerfilado", a), 
+                () -> new ConvolveOp(createKernelPerfilado(a)));
+    }
+    
+    /**
+     * Obtiene el número de peticiones resueltas con un objeto de la caché.
+     *
+     * @return número de aciertos de la caché.
+     */
+    public static long getAciertosCache() {
+        return CACHE.getAciertos();
+    }
+    
+    /**
+     * Obtiene el número de peticiones que tuvieron que generar un objeto nuevo.
+     *
+     * @return número de fallos de la caché.
+     */
+    public static long getFallosCache() {
+        return CACHE.getFallos();
+    }
+    
+    /**
+     * Vacía la caché de máscaras y operaciones y pone a cero sus contadores.
+     */
+    public static void limpiarCache() {
+        CACHE.limpiar();
     }
 }
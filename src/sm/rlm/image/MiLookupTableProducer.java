@@ -5,7 +5,9 @@
 package sm.rlm.image;
 
 import java.awt.image.ByteLookupTable;
+import java.awt.image.LookupOp;
 import java.awt.image.LookupTable;
+import java.util.List;
 
 /**
  * Clase auxiliar para generar distintas tablas de transformación de color.
@@ -17,10 +19,29 @@ import java.awt.image.LookupTable;
  * Contiene funciones como corrección ABC (curva compuesta) y transformación
  * sepia.
  *
+ * Solo se guardan en caché los datos de las tablas (una caché acotada), de
+ * modo que llamadas repetidas con los mismos parámetros no los vuelven a
+ * calcular. Las tablas y las operaciones {@code LookupOp} no se comparten:
+ * {@code ByteLookupTable.getTable()} da acceso directo a sus arrays y no se
+ * puede redefinir, así que cada llamada crea una tabla y una operación nuevas
+ * con su propia copia de los datos, que se pueden modificar sin afectar a las
+ * demás. Quien aplique la misma operación muchas veces puede guardarla y
+ * reutilizarla.
+ *
  * @author rober
  */
 public class MiLookupTableProducer {
 
+    /**
+     * Número máximo de tablas guardadas en la caché.
+     */
+    public static final int CAPACIDAD_CACHE = 64;
+
+    /**
+     * Caché con los datos de las tablas, indexada por tipo y parámetros.
+     */
+    private static final CacheProductor<List<Object>, byte[][]> CACHE = new CacheProductor<>(CAPACIDAD_CACHE);
+
     private MiLookupTableProducer() {
     }
 
@@ -36,19 +57,22 @@ public class MiLookupTableProducer {
      * @return Tabla de transformación de tipo {@code ByteLookupTable}.
      */
     public static LookupTable crearTablaABC(int a, int b, int c) {
-        byte[] funcionT = new byte[256];
-
-        for (int x = 0; x < 256; x++) {
-            int y;
-            if (x < 128) {
-                y = (int) ((b - a) * (x / 128.0) + a);
-            } else {
-                y = (int) ((c - b) * ((x - 128) / 127.0) + b);
+        byte[][] datos = CACHE.obtener(List.of("abc", a, b, c), () -> {
+            byte[] funcionT = new byte[256];
+
+            for (int x = 0; x < 256; x++) {
+                int y;
+                if (x < 128) {
+                    y = (int) ((b - a) * (x / 128.0) + a);
+                } else {
+                    y = (int) ((c - b) * ((x - 128) / 127.0) + b);
+                }
+                funcionT[x] = (byte) Math.max(0, Math.min(255, y));
             }
-            funcionT[x] = (byte) Math.max(0, Math.min(255, y));
-        }
 
-        return new ByteLookupTable(0, funcionT);
+            return new byte[][]{funcionT};
+        });
+        return new ByteLookupTable(0, copiar(datos));
     }
 
     /**
@@ -58,20 +82,94 @@ public class MiLookupTableProducer {
      * canales RGB para obtener un tono cálido característico de fotografías
      * antiguas.
      *
+     * Como una tabla solo puede transformar cada canal a partir de sí mismo,
+     * los coeficientes de cada fila se suman y el resultado es una
+     * aproximación. Para el sepia que mezcla los tres canales, véase
+     * {@link MatrizColorOp#crearSepia()}.
+     *
      * @return Tabla {@code ByteLookupTable} con 3 bandas (R, G, B) modificadas.
      */
     public static LookupTable createSepiaTable() {
-        byte[] r = new byte[256];
-        byte[] g = new byte[256];
-        byte[] b = new byte[256];
-
-        for (int i = 0; i < 256; i++) {
-            // Valores obtenidos en https://www.geeksforgeeks.org/image-processing-in-java-colored-image-to-sepia-image-conversion/
-            r[i] = (byte) Math.min(255, (int) (i * 0.393 + i * 0.769 + i * 0.189));
-            g[i] = (byte) Math.min(255, (int) (i * 0.349 + i * 0.686 + i * 0.168));
-            b[i] = (byte) Math.min(255, (int) (i * 0.272 + i * 0.534 + i * 0.131));
+        byte[][] datos = CACHE.obtener(List.of("sepia"), () -> {
+            byte[] r = new byte[256];
+            byte[] g = new byte[256];
+            byte[] b = new byte[256];
+
+            for (int i = 0; i < 256; i++) {
+                // Valores obtenidos en https://www.geeksforgeeks.org/image-processing-in-java-colored-image-to-sepia-image-conversion/
+                r[i] = (byte) Math.min(255, (int) (i * 0.393 + i * 0.769 + i * 0.189));
+                g[i] = (byte) Math.min(255, (int) (i * 0.349 + i * 0.686 + i * 0.168));
+                b[i] = (byte) Math.min(255, (int) (i * 0.272 + i * 0.534 + i * 0.131));
+            }
+
+            return new byte[][]{r, g, b};
+        });
+        return new ByteLookupTable(0, copiar(datos));
+    }
+
+    /**
+     * Crea una operación de tipo Lookup con la tabla de corrección ABC. Los
+     * datos de la tabla salen de la caché, pero la operación es nueva en
+     * cada llamada.
+     *
+     * @param a Valor inicial del primer tramo.
+     * @param b Punto medio común.
+     * @param c Valor final del segundo tramo.
+     * @return Operación {@code LookupOp} con la tabla ABC.
+     */
+    public static LookupOp createLookupOpABC(int a, int b, int c) {
+        return new LookupOp(crearTablaABC(a, b, c), null);
+    }
+
+    /**
+     * Crea una operación de tipo Lookup con la tabla sepia. Los datos de la
+     * tabla salen de la caché, pero la operación es nueva en cada llamada.
+     *
+     * @return Operación {@code LookupOp} con la tabla sepia.
+     */
+    public static LookupOp createSepiaLookupOp() {
+        return new LookupOp(createSepiaTable(), null);
+    }
+
+    /**
+     * Copia los datos de una tabla, para que la tabla devuelta no comparta
+     * sus arrays con la caché.
+     *
+     * @param datos Datos de la tabla, un array por banda.
+     * @return Copia de los datos.
+     */
+    private static byte[][] copiar(byte[][] datos) {
+        byte[][] copia = new byte[datos.length][];
+        for (int i = 0; i < datos.length; i++) {
+            copia[i] = datos[i].clone();
         }
+        return copia;
+    }
+
+    /**
+     * Obtiene el número de peticiones cuyos datos de tabla estaban en la
+     * caché. Aun así, cada petición crea su tabla y su operación.
+     *
+     * @return número de aciertos de la caché.
+     */
+    public static long getAciertosCache() {
+        return CACHE.getAciertos();
+    }
 
-        return new ByteLookupTable(0, new byte[][]{r, g, b});
+    /**
+     * Obtiene el número de peticiones que tuvieron que calcular los datos
+     * de la tabla.
+     *
+     * @return número de fallos de la caché.
+     */
+    public static long getFallosCache() {
+        return CACHE.getFallos();
+    }
+
+    /**
+     * Vacía la caché de tablas y pone a cero sus contadores.
+     */
+    public static void limpiarCache() {
+        CACHE.limpiar();
     }
 }
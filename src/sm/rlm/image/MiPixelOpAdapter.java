@@ -0,0 +1,343 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+/**
+ * Clase base para las operaciones puntuales sobre imágenes RGB, es decir,
+ * aquellas en las que el color de cada píxel de destino depende únicamente del
+ * color del mismo píxel en la fuente.
+ *
+ * Las subclases implementan {@link #filtrarPixel(int)} sobre un píxel
+ * empaquetado 0xAARRGGBB con componentes de 8 bits. Esta clase se encarga del
+ * recorrido de la imagen: si fuente y destino son del mismo tipo y este es
+ * {@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB}, {@code TYPE_3BYTE_BGR} o
+ * {@code TYPE_4BYTE_ABGR}, se trabaja directamente sobre los arrays de datos
+ * por filas; en otro caso se usa el acceso genérico del raster.
+ *
+ * En los recorridos directos (tipos entero y byte), cada fila se procesa con
+ * {@link #filtrarFila(int[], int, int[], int, int, int)}. Las subclases pueden
+ * sobrescribirlo con un bucle sin saltos ni llamadas por píxel. En los tipos
+ * byte pueden además sobrescribir
+ * {@link #filtrarFilaByte(byte[], int, byte[], int, int, boolean)} para
+ * procesar las muestras sin empaquetarlas.
+ *
+ * Si la Vector API ({@code jdk.incubator.vector}) está disponible en tiempo
+ * de ejecución (por ejemplo, con {@code --add-modules jdk.incubator.vector}),
+ * {@link RojoOp} y {@link PopArtOp} usan en estos recorridos implementaciones
+ * vectoriales; si no, sus bucles escalares. Los resultados son los mismos.
+ *
+ * En imágenes sin canal alfa el píxel se recibe con alfa 255 y el alfa
+ * devuelto se ignora.
+ *
+ * Como cada píxel se lee antes de escribir el suyo, la imagen de destino
+ * puede ser la misma que la fuente ({@code op.filter(img, img)}), lo que
+ * filtra la imagen en el sitio sin reservar memoria.
+ *
+ * @author rober
+ */
+public abstract class MiPixelOpAdapter extends MiBufferedImageOpAdapter implements OperacionPuntual {
+
+    /**
+     * Propiedad del sistema que, con el valor {@code false}, desactiva los
+     * recorridos vectoriales aunque el módulo esté disponible.
+     */
+    public static final String PROPIEDAD_VECTORIAL = "sm.rlm.image.vectorial";
+
+    /**
+     * Indica si las subclases pueden usar los recorridos de
+     * {@link NucleosVectoriales}. Se decide una sola vez, al cargar la clase.
+     */
+    static final boolean VECTORIAL = detectarVectorial();
+
+    /**
+     * Calcula el color de destino de un píxel.
+     *
+     * @param argb Color del píxel fuente empaquetado como 0xAARRGGBB.
+     * @return Color del píxel de destino empaquetado como 0xAARRGGBB.
+     */
+    @Override
+    public abstract int filtrarPixel(int argb);
+
+    /**
+     * Aplica la operación puntual sobre una tesela de la imagen, eligiendo el
+     * recorrido más rápido según el tipo de las imágenes.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    @Override
+    protected void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        if (src.getType() == dest.getType() && esEmpaquetadaInt(src)) {
+            int alfa = src.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+            filtrarTeselaInt(src.getRaster(), dest.getRaster(), tesela, alfa);
+        } else if (src.getType() == dest.getType() && esEntrelazadaByte(src)) {
+            filtrarTeselaByte(src.getRaster(), dest.getRaster(), tesela);
+        } else {
+            filtrarTeselaGenerica(src.getRaster(), dest.getRaster(), tesela);
+        }
+    }
+
+    /**
+     * Recorre una tesela de imágenes con píxeles empaquetados en enteros.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     * @param alfa Máscara que se aplica a cada píxel leído para forzar el alfa
+     * a 255 en las imágenes sin canal alfa (0 si la imagen tiene alfa).
+     */
+    private void filtrarTeselaInt(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela, int alfa) {
+        int[] srcData = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+        int[] destData = ((DataBufferInt) destRaster.getDataBuffer()).getData();
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int i = getIndicePixel(srcRaster, tesela.x, y);
+            int j = getIndicePixel(destRaster, tesela.x, y);
+            filtrarFila(srcData, i, destData, j, tesela.width, alfa);
+        }
+    }
+
+    /**
+     * Aplica la operación sobre una secuencia de píxeles empaquetados
+     * 0xAARRGGBB consecutivos. Por defecto llama a {@link #filtrarPixel(int)}
+     * para cada píxel.
+     *
+     * Las implementaciones deben dar el mismo resultado que
+     * {@link #filtrarPixel(int)} y admitir que ambos arrays sean el mismo, con
+     * las mismas posiciones.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles a procesar.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído antes de
+     * procesarlo (0xFF000000 para forzar el alfa a 255, o 0).
+     */
+    protected void filtrarFila(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa) {
+        for (int k = 0; k < longitud; k++) {
+            dest[destPos + k] = filtrarPixel(src[srcPos + k] | alfa);
+        }
+    }
+
+    /**
+     * Aplica la operación directamente sobre las muestras de una fila de una
+     * imagen {@code TYPE_3BYTE_BGR} o {@code TYPE_4BYTE_ABGR}, sin
+     * empaquetarlas. Puede procesar solo los primeros píxeles de la fila; los
+     * demás se empaquetan y se procesan con
+     * {@link #filtrarFila(int[], int, int[], int, int, int)}. Por defecto no
+     * procesa ninguno.
+     *
+     * Las implementaciones deben dar el mismo resultado que
+     * {@link #filtrarPixel(int)}, admitir que ambos arrays sean el mismo y no
+     * escribir fuera de los píxeles de la fila.
+     *
+     * @param src Array con las muestras fuente.
+     * @param srcPos Posición de la primera muestra del primer píxel fuente.
+     * @param dest Array donde se escriben las muestras resultantes.
+     * @param destPos Posición de la primera muestra del primer píxel de
+     * destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param conAlfa true si la imagen es {@code TYPE_4BYTE_ABGR}, false si es
+     * {@code TYPE_3BYTE_BGR}.
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    protected int filtrarFilaByte(byte[] src, int srcPos, byte[] dest, int destPos, int longitud, boolean conAlfa) {
+        return 0;
+    }
+
+    /**
+     * Detecta si se pueden usar los recorridos de {@link NucleosVectoriales}:
+     * el módulo {@code jdk.incubator.vector} debe estar cargado, el
+     * procesador debe admitir vectores de al menos cuatro enteros y no debe
+     * estar desactivado con la propiedad {@value #PROPIEDAD_VECTORIAL}.
+     *
+     * @return true si se usan los recorridos vectoriales.
+     */
+    private static boolean detectarVectorial() {
+        if (!Boolean.parseBoolean(System.getProperty(PROPIEDAD_VECTORIAL, "true"))) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return NucleosVectoriales.getNumCarriles() >= 4;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Recorre una tesela de imágenes con muestras de 8 bits entrelazadas.
+     *
+     * Cada fila se ofrece primero a
+     * {@link #filtrarFilaByte(byte[], int, byte[], int, int, boolean)}. Los
+     * píxeles que esta no procesa se empaquetan en un array de enteros
+     * 0xAARRGGBB, se procesan con
+     * {@link #filtrarFila(int[], int, int[], int, int, int)} y se vuelven a
+     * desempaquetar en el destino, de modo que las subclases que sobrescriben
+     * el recorrido por filas lo aprovechan también en estas imágenes.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaByte(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela) {
+        byte[] srcData = ((DataBufferByte) srcRaster.getDataBuffer()).getData();
+        byte[] destData = ((DataBufferByte) destRaster.getDataBuffer()).getData();
+
+        ComponentSampleModel sm = (ComponentSampleModel) srcRaster.getSampleModel();
+        int[] offsets = sm.getBandOffsets();
+        int paso = sm.getPixelStride();
+        int offR = offsets[0];
+        int offG = offsets[1];
+        int offB = offsets[2];
+        boolean conAlfa = offsets.length > 3;
+        int offA = conAlfa ? offsets[3] : 0;
+
+        int[] fila = new int[tesela.width];
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int inicioSrc = getIndicePixel(srcRaster, tesela.x, y);
+            int inicioDest = getIndicePixel(destRaster, tesela.x, y);
+            int hechos = filtrarFilaByte(srcData, inicioSrc, destData, inicioDest, tesela.width, conAlfa);
+            if (hechos == tesela.width) {
+                continue;
+            }
+
+            int resto = tesela.width - hechos;
+            int i = inicioSrc + hechos * paso;
+            if (conAlfa) {
+                for (int k = 0; k < resto; k++, i += paso) {
+                    fila[k] = ((srcData[i + offA] & 0xFF) << 24)
+                            | ((srcData[i + offR] & 0xFF) << 16)
+                            | ((srcData[i + offG] & 0xFF) << 8)
+                            | (srcData[i + offB] & 0xFF);
+                }
+            } else {
+                for (int k = 0; k < resto; k++, i += paso) {
+                    fila[k] = 0xFF000000
+                            | ((srcData[i + offR] & 0xFF) << 16)
+                            | ((srcData[i + offG] & 0xFF) << 8)
+                            | (srcData[i + offB] & 0xFF);
+                }
+            }
+
+            filtrarFila(fila, 0, fila, 0, resto, 0);
+
+            int j = inicioDest + hechos * paso;
+            for (int k = 0; k < resto; k++, j += paso) {
+                int argb = fila[k];
+                destData[j + offR] = (byte) (argb >> 16);
+                destData[j + offG] = (byte) (argb >> 8);
+                destData[j + offB] = (byte) argb;
+            }
+            if (conAlfa) {
+                j = inicioDest + hechos * paso;
+                for (int k = 0; k < resto; k++, j += paso) {
+                    destData[j + offA] = (byte) (fila[k] >>> 24);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre una tesela de cualquier tipo de imagen mediante el acceso
+     * genérico del raster, fila a fila.
+     *
+     * Las imágenes con menos de tres bandas se tratan como imágenes en escala
+     * de grises: el valor gris se replica en R, G y B, y el resultado se
+     * vuelve a convertir a gris con la media de sus componentes.
+     *
+     * Las muestras que no son de 8 bits (por ejemplo, las de
+     * {@code TYPE_USHORT_GRAY} o {@code TYPE_USHORT_565_RGB}) se escalan a 8
+     * bits antes de empaquetarlas y se vuelven a escalar a su profundidad al
+     * escribirlas.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaGenerica(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela) {
+        int numBandas = srcRaster.getNumBands();
+        int numBandasDest = destRaster.getNumBands();
+        int[] maxSrc = getMaximos(srcRaster);
+        int[] maxDest = getMaximos(destRaster);
+        int[] fila = new int[tesela.width * numBandas];
+        int[] filaDest = (numBandasDest == numBandas) ? fila : new int[tesela.width * numBandasDest];
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            srcRaster.getPixels(tesela.x, y, tesela.width, 1, fila);
+            if (maxSrc != null) {
+                escalarMuestras(fila, maxSrc, true);
+            }
+
+            for (int i = 0, j = 0; i < fila.length; i += numBandas, j += numBandasDest) {
+                escribirPixel(filtrarPixel(leerPixel(fila, i, numBandas)), filaDest, j, numBandasDest);
+            }
+
+            if (maxDest != null) {
+                escalarMuestras(filaDest, maxDest, false);
+            }
+            destRaster.setPixels(tesela.x, y, tesela.width, 1, filaDest);
+        }
+    }
+
+    /**
+     * Empaqueta como 0xAARRGGBB las muestras de un píxel.
+     *
+     * @param fila Muestras de la fila.
+     * @param i Posición de la primera muestra del píxel.
+     * @param numBandas Número de bandas de la imagen.
+     * @return Color del píxel empaquetado.
+     */
+    private static int leerPixel(int[] fila, int i, int numBandas) {
+        if (numBandas < 3) {
+            int a = numBandas == 2 ? fila[i + 1] : 0xFF;
+            int v = fila[i];
+            return (a << 24) | (v << 16) | (v << 8) | v;
+        }
+        int a = numBandas > 3 ? fila[i + 3] : 0xFF;
+        return (a << 24) | (fila[i] << 16) | (fila[i + 1] << 8) | fila[i + 2];
+    }
+
+    /**
+     * Desempaqueta un color 0xAARRGGBB en las muestras de un píxel.
+     *
+     * @param argb Color del píxel empaquetado.
+     * @param fila Muestras de la fila.
+     * @param j Posición de la primera muestra del píxel.
+     * @param numBandas Número de bandas de la imagen.
+     */
+    private static void escribirPixel(int argb, int[] fila, int j, int numBandas) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+
+        if (numBandas < 3) {
+            fila[j] = (r + g + b) / 3;
+            if (numBandas == 2) {
+                fila[j + 1] = argb >>> 24;
+            }
+            return;
+        }
+
+        fila[j] = r;
+        fila[j + 1] = g;
+        fila[j + 2] = b;
+        if (numBandas > 3) {
+            fila[j + 3] = argb >>> 24;
+        }
+    }
+}
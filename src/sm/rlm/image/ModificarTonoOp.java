@@ -5,9 +5,6 @@
 package sm.rlm.image;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import sm.image.BufferedImageOpAdapter;
 
 /**
  * Filtro de modificación de tono en píxeles similares a un color base.
@@ -17,9 +14,21 @@ import sm.image.BufferedImageOpAdapter;
  * definido, se aplica un desplazamiento circular sobre el tono manteniendo la
  * saturación y el brillo originales.
  *
+ * El tono se calcula con aritmética entera, cuantizado en
+ * {@value #ESCALA_TONO} pasos (256 por cada sexto del círculo). Al crear la
+ * operación se precalcula, para cada tono cuantizado, si está dentro del
+ * umbral y cuál es su tono desplazado, de modo que los píxeles fuera del
+ * umbral se copian sin más y el resto solo necesita reconstruir el color a
+ * partir de su máximo, su mínimo y el nuevo tono.
+ *
  * @author rober
  */
-public class ModificarTonoOp extends BufferedImageOpAdapter {
+public class ModificarTonoOp extends MiPixelOpAdapter {
+
+    /**
+     * Número de pasos en que se cuantiza el círculo de tonos.
+     */
+    public static final int ESCALA_TONO = 6 * 256;
 
     /**
      * Color base usado como referencia para comparar tonos.
@@ -36,6 +45,12 @@ public class ModificarTonoOp extends BufferedImageOpAdapter {
      */
     private int desplazamientoTono;
 
+    /**
+     * Tono desplazado para cada tono cuantizado, o -1 si el tono está fuera
+     * del umbral y el píxel no se modifica.
+     */
+    private int[] tablaTono = new int[ESCALA_TONO];
+
     /**
      * Constructor de la operación de modificación de tono.
      *
@@ -50,69 +65,107 @@ public class ModificarTonoOp extends BufferedImageOpAdapter {
         this.color = color;
         this.umbral = umbral;
         this.desplazamientoTono = desplazamientoTono;
+
+        int max = Math.max(color.getRed(), Math.max(color.getGreen(), color.getBlue()));
+        int min = Math.min(color.getRed(), Math.min(color.getGreen(), color.getBlue()));
+        int tonoBase = (max == min) ? 0 : tono(color.getRed(), color.getGreen(), color.getBlue(), max, max - min);
+        int desplazamiento = Math.round(desplazamientoTono * ESCALA_TONO / 360.0f);
+
+        for (int h = 0; h < ESCALA_TONO; h++) {
+            int distancia = Math.abs(h - tonoBase);
+            if (distancia > ESCALA_TONO / 2) {
+                distancia = ESCALA_TONO - distancia;
+            }
+
+            if ((long) distancia * 360 <= (long) umbral * ESCALA_TONO) {
+                this.tablaTono[h] = Math.floorMod(h + desplazamiento, ESCALA_TONO);
+            } else {
+                this.tablaTono[h] = -1;
+            }
+        }
     }
 
     /**
-     * Aplica el filtro de modificación de tono a una imagen.
+     * Aplica el filtro de modificación de tono a un píxel.
      *
-     * Compara el tono (componente H de HSB) de cada píxel con el tono de un
-     * color de referencia. Si la diferencia es menor o igual al umbral
-     * especificado, se modifica el tono desplazándolo en el círculo HSB por el
-     * ángulo indicado, manteniendo la saturación y el brillo originales.
+     * Compara el tono (componente H de HSB) del píxel con el tono del color de
+     * referencia. Si la diferencia es menor o igual al umbral especificado, se
+     * modifica el tono desplazándolo en el círculo HSB por el ángulo indicado,
+     * manteniendo la saturación y el brillo originales. Los píxeles grises (sin
+     * tono) y los que están fuera del umbral se copian sin cambios. El alfa se
+     * conserva.
      *
-     * @param src Imagen fuente sobre la que se aplica el filtro.
-     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva.
-     * @return Imagen resultante con los tonos modificados en los píxeles
-     * seleccionados.
-     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @param argb Color del píxel fuente (0xAARRGGBB).
+     * @return Color del píxel resultante (0xAARRGGBB).
      */
     @Override
-    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        if (src == null) {
-            throw new NullPointerException("src image is null");
+    public int filtrarPixel(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        int d = max - min;
+        if (d == 0) {
+            return argb;
         }
 
-        if (dest == null) {
-            dest = createCompatibleDestImage(src, null);
+        int h = this.tablaTono[tono(r, g, b, max, d)];
+        if (h < 0) {
+            return argb;
         }
 
-        WritableRaster srcRaster = src.getRaster();
-        WritableRaster destRaster = dest.getRaster();
-
-        float[] hsb = new float[3];
-        float[] hsbSelectedColor = Color.RGBtoHSB(this.color.getRed(), this.color.getGreen(), this.color.getBlue(), null);
-        float hSelectedColor = hsbSelectedColor[0] * 360;
-
-        for (int x = 0; x < src.getWidth(); x++) {
-            for (int y = 0; y < src.getHeight(); y++) {
-                int[] pixel = new int[3];
-                srcRaster.getPixel(x, y, pixel);
-
-                Color c = new Color(pixel[0], pixel[1], pixel[2]);
-                Color.RGBtoHSB(c.getRed(), c.getGreen(), c.getBlue(), hsb);
-                float h = hsb[0] * 360.0f;
-                float s = hsb[1];
-                float b = hsb[2];
-
-                float distancia = Math.abs(h - hSelectedColor);
-                if (distancia > 180) {
-                    distancia = 360 - distancia;
-                }
-
-                if (distancia <= this.umbral) {
-                    h = (h + this.desplazamientoTono) % 360;
-                }
-
-                int rgb = Color.HSBtoRGB(h / 360.0f, s, b);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int bVal = rgb & 0xFF;
-
-                destRaster.setPixel(x, y, new int[]{r, g, bVal});
-            }
+        // Con el brillo (max) y la saturación (max - min) fijos, el tono solo
+        // decide qué canal es el máximo, cuál el mínimo y el valor del tercero
+        int f = h & 0xFF;
+        int sube = min + ((d * f + 128) >> 8);
+        int baja = max - ((d * f + 128) >> 8);
+
+        switch (h >> 8) {
+            case 0:
+                r = max; g = sube; b = min;
+                break;
+            case 1:
+                r = baja; g = max; b = min;
+                break;
+            case 2:
+                r = min; g = max; b = sube;
+                break;
+            case 3:
+                r = min; g = baja; b = max;
+                break;
+            case 4:
+                r = sube; g = min; b = max;
+                break;
+            default:
+                r = max; g = min; b = baja;
+                break;
         }
 
-        return dest;
+        return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
     }
 
+    /**
+     * Calcula el tono cuantizado de un color no gris, en el rango
+     * [0, {@value #ESCALA_TONO}).
+     *
+     * @param r Componente roja.
+     * @param g Componente verde.
+     * @param b Componente azul.
+     * @param max Mayor de las tres componentes.
+     * @param d Diferencia entre la mayor y la menor componente (mayor que 0).
+     * @return Tono cuantizado.
+     */
+    private static int tono(int r, int g, int b, int max, int d) {
+        int h;
+        if (r == max) {
+            h = (g - b) * 256 / d;
+        } else if (g == max) {
+            h = 512 + (b - r) * 256 / d;
+        } else {
+            h = 1024 + (r - g) * 256 / d;
+        }
+        return (h < 0) ? h + ESCALA_TONO : h;
+    }
 }
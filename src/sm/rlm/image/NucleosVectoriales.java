@@ -0,0 +1,363 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Recorridos por filas de {@link RojoOp} y {@link PopArtOp} implementados con
+ * la Vector API ({@code jdk.incubator.vector}), que procesan varios píxeles
+ * con cada instrucción.
+ *
+ * Esta es la única clase de la librería que usa el módulo incubado. Solo se
+ * carga si {@link MiPixelOpAdapter#VECTORIAL} es cierto, es decir, si el
+ * módulo está presente en tiempo de ejecución (por ejemplo, con
+ * {@code --add-modules jdk.incubator.vector}); en otro caso las operaciones
+ * usan sus bucles escalares.
+ *
+ * Cada método procesa los píxeles de la fila que caben en vectores completos
+ * y devuelve cuántos ha procesado; el resto lo termina el bucle escalar de la
+ * operación. Los resultados son idénticos a los de los bucles escalares.
+ *
+ * En las imágenes de bytes entrelazados ({@code TYPE_3BYTE_BGR} y
+ * {@code TYPE_4BYTE_ABGR}), las muestras de cada píxel se reordenan dentro
+ * del vector para formar enteros 0xAARRGGBB, sin empaquetarlas una a una, y
+ * se vuelven a colocar en su orden al escribirlas.
+ *
+ * @author rober
+ */
+final class NucleosVectoriales {
+
+    /**
+     * Forma de vector preferida por el procesador para enteros.
+     */
+    private static final VectorSpecies<Integer> ENTEROS = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Vectores de bytes del mismo tamaño: cuatro bytes por cada entero.
+     */
+    private static final VectorSpecies<Byte> BYTES = ENTEROS.withLanes(byte.class);
+
+    /**
+     * Posición de cada canal dentro del entero 0xAARRGGBB al reinterpretar un
+     * vector de bytes como enteros, en el orden B, G, R, A.
+     */
+    private static final int[] BYTE_CANAL = bytesPorCanal();
+
+    /**
+     * Posición dentro del píxel de las muestras B, G, R y A de
+     * {@code TYPE_3BYTE_BGR} (-1 porque no tiene alfa).
+     */
+    private static final int[] MUESTRAS_BGR = {0, 1, 2, -1};
+
+    /**
+     * Posición dentro del píxel de las muestras B, G, R y A de
+     * {@code TYPE_4BYTE_ABGR}.
+     */
+    private static final int[] MUESTRAS_ABGR = {1, 2, 3, 0};
+
+    // Las permutaciones y máscaras son constantes para que el compilador las
+    // convierta en instrucciones; leídas de campos de un objeto, cada
+    // reordenación se ejecuta lanza a lanza y es mucho más lenta
+
+    /**
+     * Permutación de las muestras de {@code TYPE_3BYTE_BGR} a 0xAARRGGBB.
+     */
+    private static final VectorShuffle<Byte> ENTRADA_BGR = permutacion(MUESTRAS_BGR, 3, true);
+
+    /**
+     * Permutación de 0xAARRGGBB a las muestras de {@code TYPE_3BYTE_BGR}.
+     */
+    private static final VectorShuffle<Byte> SALIDA_BGR = permutacion(MUESTRAS_BGR, 3, false);
+
+    /**
+     * Bytes del final del vector que no pertenecen a los píxeles procesados
+     * en {@code TYPE_3BYTE_BGR}.
+     */
+    private static final VectorMask<Byte> SOBRANTES_BGR = BYTES.indexInRange(0, 3 * ENTEROS.length()).not();
+
+    /**
+     * Permutación de las muestras de {@code TYPE_4BYTE_ABGR} a 0xAARRGGBB.
+     */
+    private static final VectorShuffle<Byte> ENTRADA_ABGR = permutacion(MUESTRAS_ABGR, 4, true);
+
+    /**
+     * Permutación de 0xAARRGGBB a las muestras de {@code TYPE_4BYTE_ABGR}.
+     */
+    private static final VectorShuffle<Byte> SALIDA_ABGR = permutacion(MUESTRAS_ABGR, 4, false);
+
+    private NucleosVectoriales() {
+    }
+
+    /**
+     * Obtiene el número de enteros de cada vector.
+     *
+     * @return número de píxeles que se procesan a la vez.
+     */
+    static int getNumCarriles() {
+        return ENTEROS.length();
+    }
+
+    /**
+     * Aplica {@link RojoOp} sobre los píxeles empaquetados de una fila.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído.
+     * @param umbral Umbral de la operación.
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    static int rojo(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa, int umbral) {
+        int limite = ENTEROS.loopBound(longitud);
+        for (int k = 0; k < limite; k += ENTEROS.length()) {
+            IntVector p = IntVector.fromArray(ENTEROS, src, srcPos + k).or(alfa);
+            rojo(p, umbral).intoArray(dest, destPos + k);
+        }
+        return limite;
+    }
+
+    /**
+     * Aplica {@link RojoOp} sobre las muestras entrelazadas de una fila.
+     *
+     * @param src Array con las muestras fuente.
+     * @param srcPos Posición de la primera muestra del primer píxel fuente.
+     * @param dest Array donde se escriben las muestras resultantes.
+     * @param destPos Posición de la primera muestra del primer píxel de
+     * destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param conAlfa true si la imagen es {@code TYPE_4BYTE_ABGR}, false si
+     * es {@code TYPE_3BYTE_BGR}.
+     * @param umbral Umbral de la operación.
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    static int rojo(byte[] src, int srcPos, byte[] dest, int destPos, int longitud, boolean conAlfa, int umbral) {
+        int k = 0;
+        int n = ENTEROS.length();
+        if (conAlfa) {
+            for (; k + n <= longitud; k += n) {
+                ByteVector muestras = ByteVector.fromArray(BYTES, src, srcPos + 4 * k);
+                guardarAbgr(rojo(cargarAbgr(muestras), umbral), dest, destPos + 4 * k);
+            }
+        } else {
+            for (; cabeBgr(k, longitud); k += n) {
+                ByteVector muestras = ByteVector.fromArray(BYTES, src, srcPos + 3 * k);
+                guardarBgr(rojo(cargarBgr(muestras), umbral), muestras, dest, destPos + 3 * k);
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Aplica {@link PopArtOp} sobre los píxeles empaquetados de una fila.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído.
+     * @param sumas Suma R+G+B mínima de cada tramo, en orden creciente.
+     * @param colores Color RGB de cada tramo (uno más que sumas).
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    static int popArt(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa,
+            int[] sumas, int[] colores) {
+        int limite = ENTEROS.loopBound(longitud);
+        for (int k = 0; k < limite; k += ENTEROS.length()) {
+            IntVector p = IntVector.fromArray(ENTEROS, src, srcPos + k).or(alfa);
+            popArt(p, sumas, colores).intoArray(dest, destPos + k);
+        }
+        return limite;
+    }
+
+    /**
+     * Aplica {@link PopArtOp} sobre las muestras entrelazadas de una fila.
+     *
+     * @param src Array con las muestras fuente.
+     * @param srcPos Posición de la primera muestra del primer píxel fuente.
+     * @param dest Array donde se escriben las muestras resultantes.
+     * @param destPos Posición de la primera muestra del primer píxel de
+     * destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param conAlfa true si la imagen es {@code TYPE_4BYTE_ABGR}, false si
+     * es {@code TYPE_3BYTE_BGR}.
+     * @param sumas Suma R+G+B mínima de cada tramo, en orden creciente.
+     * @param colores Color RGB de cada tramo (uno más que sumas).
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    static int popArt(byte[] src, int srcPos, byte[] dest, int destPos, int longitud, boolean conAlfa,
+            int[] sumas, int[] colores) {
+        int k = 0;
+        int n = ENTEROS.length();
+        if (conAlfa) {
+            for (; k + n <= longitud; k += n) {
+                ByteVector muestras = ByteVector.fromArray(BYTES, src, srcPos + 4 * k);
+                guardarAbgr(popArt(cargarAbgr(muestras), sumas, colores), dest, destPos + 4 * k);
+            }
+        } else {
+            for (; cabeBgr(k, longitud); k += n) {
+                ByteVector muestras = ByteVector.fromArray(BYTES, src, srcPos + 3 * k);
+                guardarBgr(popArt(cargarBgr(muestras), sumas, colores), muestras, dest, destPos + 3 * k);
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Calcula {@link RojoOp} sobre un vector de píxeles 0xAARRGGBB: conserva
+     * los píxeles cuyo R - G - B supera el umbral y convierte los demás a
+     * gris, con la misma división entre 3 que el bucle escalar.
+     *
+     * @param p Píxeles fuente.
+     * @param umbral Umbral de la operación.
+     * @return Píxeles resultantes.
+     */
+    private static IntVector rojo(IntVector p, int umbral) {
+        IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+        IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+        IntVector b = p.and(0xFF);
+
+        VectorMask<Integer> conserva = r.sub(g).sub(b).compare(VectorOperators.GT, umbral);
+        IntVector media = r.add(g).add(b).mul(21846).lanewise(VectorOperators.LSHR, 16);
+        IntVector gris = p.and(0xFF000000).or(media.mul(0x010101));
+
+        return gris.blend(p, conserva);
+    }
+
+    /**
+     * Calcula {@link PopArtOp} sobre un vector de píxeles 0xAARRGGBB: cada
+     * píxel recibe el color del último tramo cuya suma mínima alcanza, y
+     * conserva su alfa.
+     *
+     * @param p Píxeles fuente.
+     * @param sumas Suma R+G+B mínima de cada tramo, en orden creciente.
+     * @param colores Color RGB de cada tramo (uno más que sumas).
+     * @return Píxeles resultantes.
+     */
+    private static IntVector popArt(IntVector p, int[] sumas, int[] colores) {
+        IntVector suma = p.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                .add(p.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+                .add(p.and(0xFF));
+
+        IntVector color = IntVector.broadcast(ENTEROS, colores[0]);
+        for (int i = 0; i < sumas.length; i++) {
+            color = color.blend(colores[i + 1], suma.compare(VectorOperators.GE, sumas[i]));
+        }
+        return p.and(0xFF000000).or(color);
+    }
+
+    /**
+     * Indica si se puede procesar un vector completo de píxeles
+     * {@code TYPE_3BYTE_BGR} a partir del píxel k de la fila. El vector leído
+     * abarca también parte de los píxeles siguientes, que deben pertenecer a
+     * la fila.
+     *
+     * @param k Primer píxel del vector.
+     * @param longitud Número de píxeles de la fila.
+     * @return true si el vector cabe en la fila.
+     */
+    private static boolean cabeBgr(int k, int longitud) {
+        return 3L * k + BYTES.length() <= 3L * longitud;
+    }
+
+    /**
+     * Convierte un vector de muestras {@code TYPE_3BYTE_BGR} en enteros
+     * 0xAARRGGBB con alfa 255.
+     *
+     * @param muestras Muestras leídas de la imagen.
+     * @return Píxeles empaquetados.
+     */
+    private static IntVector cargarBgr(ByteVector muestras) {
+        return muestras.rearrange(ENTRADA_BGR).reinterpretAsInts().or(0xFF000000);
+    }
+
+    /**
+     * Escribe un vector de enteros 0xAARRGGBB como muestras
+     * {@code TYPE_3BYTE_BGR}. Los bytes sobrantes del final se escriben con
+     * su valor original, que corresponde a píxeles siguientes de la misma
+     * fila que aún no se han procesado, de modo que el filtrado en el sitio
+     * sigue siendo correcto.
+     *
+     * @param pixeles Píxeles resultantes.
+     * @param muestras Muestras leídas de la imagen para estos píxeles.
+     * @param dest Array de destino.
+     * @param destPos Posición de la primera muestra de destino.
+     */
+    private static void guardarBgr(IntVector pixeles, ByteVector muestras, byte[] dest, int destPos) {
+        pixeles.reinterpretAsBytes().rearrange(SALIDA_BGR).blend(muestras, SOBRANTES_BGR).intoArray(dest, destPos);
+    }
+
+    /**
+     * Convierte un vector de muestras {@code TYPE_4BYTE_ABGR} en enteros
+     * 0xAARRGGBB.
+     *
+     * @param muestras Muestras leídas de la imagen.
+     * @return Píxeles empaquetados.
+     */
+    private static IntVector cargarAbgr(ByteVector muestras) {
+        return muestras.rearrange(ENTRADA_ABGR).reinterpretAsInts();
+    }
+
+    /**
+     * Escribe un vector de enteros 0xAARRGGBB como muestras
+     * {@code TYPE_4BYTE_ABGR}.
+     *
+     * @param pixeles Píxeles resultantes.
+     * @param dest Array de destino.
+     * @param destPos Posición de la primera muestra de destino.
+     */
+    private static void guardarAbgr(IntVector pixeles, byte[] dest, int destPos) {
+        pixeles.reinterpretAsBytes().rearrange(SALIDA_ABGR).intoArray(dest, destPos);
+    }
+
+    /**
+     * Calcula en qué byte del entero queda cada canal al reinterpretar un
+     * vector de bytes como enteros (0 = el menos significativo).
+     *
+     * @return posición del byte de los canales B, G, R y A.
+     */
+    private static int[] bytesPorCanal() {
+        byte[] prueba = new byte[BYTES.length()];
+        prueba[0] = 1;
+        boolean littleEndian = ByteVector.fromArray(BYTES, prueba, 0).reinterpretAsInts().lane(0) == 1;
+        return littleEndian ? new int[]{0, 1, 2, 3} : new int[]{3, 2, 1, 0};
+    }
+
+    /**
+     * Crea la permutación entre las muestras de un tipo de imagen de bytes
+     * entrelazados y los bytes de los enteros 0xAARRGGBB.
+     *
+     * @param muestras Posición dentro del píxel de las muestras B, G, R y A
+     * (-1 si no hay alfa).
+     * @param paso Número de bytes de cada píxel.
+     * @param entrada true para pasar de las muestras a los enteros, false
+     * para el sentido contrario.
+     * @return la permutación.
+     */
+    private static VectorShuffle<Byte> permutacion(int[] muestras, int paso, boolean entrada) {
+        int[] indices = new int[BYTES.length()];
+        for (int k = 0; k < ENTEROS.length(); k++) {
+            for (int c = 0; c < 4; c++) {
+                // Sin alfa, su byte se rellena con cualquier muestra del píxel
+                int muestra = k * paso + Math.max(muestras[c], 0);
+                int enEntero = k * 4 + BYTE_CANAL[c];
+                if (entrada) {
+                    indices[enEntero] = muestra;
+                } else if (muestras[c] >= 0) {
+                    indices[muestra] = enEntero;
+                }
+            }
+        }
+        return VectorShuffle.fromArray(BYTES, indices, 0);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Interface.java to edit this template
+ */
+package sm.rlm.image;
+
+/**
+ * Interfaz que deben implementar las operaciones puntuales, es decir, aquellas
+ * en las que el color de cada píxel de destino depende únicamente del color del
+ * mismo píxel en la fuente.
+ *
+ * Las operaciones que la implementan se pueden encadenar en una sola pasada
+ * sobre la imagen mediante {@link CadenaOp}, sin imágenes intermedias. Las
+ * operaciones de vecindad (convoluciones, por ejemplo) no deben implementarla.
+ *
+ * @author rober
+ */
+public interface OperacionPuntual {
+
+    /**
+     * Calcula el color de destino de un píxel.
+     *
+     * @param argb Color del píxel fuente empaquetado como 0xAARRGGBB, con
+     * componentes de 8 bits.
+     * @return Color del píxel de destino empaquetado como 0xAARRGGBB.
+     */
+    public int filtrarPixel(int argb);
+
+    /**
+     * Indica si la operación, con su configuración actual, es realmente
+     * puntual. Las operaciones cuyo resultado puede depender de la posición
+     * del píxel deben devolver false.
+     *
+     * @return true si la operación se puede aplicar píxel a píxel.
+     */
+    public default boolean esPuntual() {
+        return true;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import sm.rlm.enums.ModoBorde;
+
+/**
+ * Filtro de perfilado (realce de bordes) con la máscara en cruz de
+ * {@link MiKernelProducer#createKernelPerfilado(float)}:
+ *
+ * <pre>
+ *  0  -a   0
+ * -a 4a+1 -a
+ *  0  -a   0
+ * </pre>
+ *
+ * En lugar de una convolución genérica con 9 multiplicaciones por muestra,
+ * aprovecha que la máscara solo tiene 5 elementos no nulos y que equivale a
+ * sumar al píxel su laplaciano multiplicado por a:
+ * {@code v' = v + a·(4v - arriba - abajo - izquierda - derecha)}. El
+ * laplaciano se calcula con sumas enteras y el producto por a en punto fijo
+ * ({@value #BITS_FRACCION} bits de parte fraccionaria), de modo que cada
+ * muestra necesita una sola multiplicación.
+ *
+ * Las imágenes de tipo entero se recorren directamente sobre su array de
+ * datos, procesando los tres canales de cada píxel empaquetado; en el
+ * interior de la imagen el bucle no tiene comprobaciones de borde. Los
+ * vecinos de fuera de la imagen se obtienen según un {@link ModoBorde} (por
+ * defecto, repitiendo el píxel más cercano), como en {@link MediaOp}, en
+ * lugar de dejar un marco a cero como {@code ConvolveOp}. El alfa se copia
+ * sin cambios.
+ *
+ * @author rober
+ */
+public class PerfiladoOp extends MiBufferedImageOpAdapter {
+
+    /**
+     * Bits de la parte fraccionaria del factor de realce en punto fijo.
+     */
+    public static final int BITS_FRACCION = 12;
+
+    /**
+     * Máximo valor absoluto admitido para el factor de realce.
+     */
+    public static final float MAX_FACTOR = 64;
+
+    /**
+     * Factor de realce a.
+     */
+    private float a;
+
+    /**
+     * Factor de realce en punto fijo.
+     */
+    private int factor;
+
+    /**
+     * Modo de obtener los píxeles de fuera de la imagen.
+     */
+    private ModoBorde modoBorde;
+
+    /**
+     * Constructor del filtro de perfilado, repitiendo el píxel del borde.
+     *
+     * @param a Factor de realce (0 deja la imagen igual; 1 es un realce
+     * habitual).
+     * @throws IllegalArgumentException si el valor absoluto del factor es
+     * mayor que {@link #MAX_FACTOR}.
+     */
+    public PerfiladoOp(float a) {
+        this(a, ModoBorde.CLAMP);
+    }
+
+    /**
+     * Constructor del filtro de perfilado.
+     *
+     * @param a Factor de realce (0 deja la imagen igual; 1 es un realce
+     * habitual).
+     * @param modoBorde Modo de obtener los píxeles de fuera de la imagen.
+     * @throws IllegalArgumentException si el valor absoluto del factor es
+     * mayor que {@link #MAX_FACTOR}.
+     */
+    public PerfiladoOp(float a, ModoBorde modoBorde) {
+        if (!(Math.abs(a) <= MAX_FACTOR)) {
+            throw new IllegalArgumentException("Factor de realce fuera de rango: " + a);
+        }
+        this.a = a;
+        this.factor = Math.round(a * (1 << BITS_FRACCION));
+        this.modoBorde = modoBorde;
+    }
+
+    /**
+     * Aplica el filtro sobre una región de la imagen.
+     *
+     * @param src Imagen fuente sobre la que se aplica el filtro.
+     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
+     * compatible.
+     * @param roi Región a procesar.
+     * @return Imagen resultante con el filtro aplicado.
+     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @throws IllegalArgumentException si fuente y destino son la misma
+     * imagen.
+     */
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dest, Rectangle roi) {
+        if (src != null && src == dest) {
+            throw new IllegalArgumentException("src and dest must be different images");
+        }
+        return super.filter(src, dest, roi);
+    }
+
+    /**
+     * Aplica el filtro sobre una tesela de la imagen, eligiendo el recorrido
+     * más rápido según el tipo de las imágenes.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    @Override
+    protected void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        if (src.getType() == dest.getType() && esEmpaquetadaInt(src)) {
+            filtrarTeselaInt(src.getRaster(), dest.getRaster(), tesela);
+        } else {
+            filtrarTeselaGenerica(src, dest, tesela);
+        }
+    }
+
+    /**
+     * Recorre una tesela de imágenes con píxeles empaquetados en enteros.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaInt(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela) {
+        int[] s = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+        int[] d = ((DataBufferInt) destRaster.getDataBuffer()).getData();
+        int ancho = srcRaster.getWidth();
+        int alto = srcRaster.getHeight();
+        int f = this.factor;
+        ModoBorde modo = this.modoBorde;
+
+        // Columnas interiores de la tesela, en las que ningún vecino queda fuera
+        int fin = tesela.x + tesela.width;
+        int xIni = Math.max(tesela.x, 1);
+        int xFin = Math.max(xIni, Math.min(fin, ancho - 1));
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int fila = getIndicePixel(srcRaster, 0, y);
+            int arriba = getIndicePixel(srcRaster, 0, modo.ajustar(y - 1, alto));
+            int abajo = getIndicePixel(srcRaster, 0, modo.ajustar(y + 1, alto));
+            int filaDest = getIndicePixel(destRaster, 0, y);
+
+            for (int x = xIni; x < xFin; x++) {
+                d[filaDest + x] = realzar(s[fila + x], s[arriba + x], s[abajo + x],
+                        s[fila + x - 1], s[fila + x + 1], f);
+            }
+
+            // Columnas de los bordes izquierdo y derecho, con el vecino de fuera
+            // ajustado según el modo de borde
+            for (int x = tesela.x; x < Math.min(xIni, fin); x++) {
+                d[filaDest + x] = realzar(s[fila + x], s[arriba + x], s[abajo + x],
+                        s[fila + modo.ajustar(x - 1, ancho)], s[fila + modo.ajustar(x + 1, ancho)], f);
+            }
+            for (int x = xFin; x < fin; x++) {
+                d[filaDest + x] = realzar(s[fila + x], s[arriba + x], s[abajo + x],
+                        s[fila + modo.ajustar(x - 1, ancho)], s[fila + modo.ajustar(x + 1, ancho)], f);
+            }
+        }
+    }
+
+    /**
+     * Realza los tres canales de color de un píxel empaquetado a partir de
+     * sus cuatro vecinos en cruz. El alfa se conserva.
+     *
+     * @param c Píxel central (0xAARRGGBB).
+     * @param n Vecino superior.
+     * @param s Vecino inferior.
+     * @param o Vecino izquierdo.
+     * @param e Vecino derecho.
+     * @param f Factor de realce en punto fijo.
+     * @return Píxel realzado (0xAARRGGBB).
+     */
+    private static int realzar(int c, int n, int s, int o, int e, int f) {
+        int redondeo = 1 << (BITS_FRACCION - 1);
+
+        // Los vecinos de R y B se suman a la vez: cada suma cabe en 10 bits y
+        // no invade el canal del otro
+        int sumaRB = (n & 0xFF00FF) + (s & 0xFF00FF) + (o & 0xFF00FF) + (e & 0xFF00FF);
+        int sumaG = ((n >> 8) & 0xFF) + ((s >> 8) & 0xFF) + ((o >> 8) & 0xFF) + ((e >> 8) & 0xFF);
+
+        int r = (c >> 16) & 0xFF;
+        int g = (c >> 8) & 0xFF;
+        int b = c & 0xFF;
+        r += (f * (4 * r - (sumaRB >>> 16)) + redondeo) >> BITS_FRACCION;
+        g += (f * (4 * g - sumaG) + redondeo) >> BITS_FRACCION;
+        b += (f * (4 * b - (sumaRB & 0x3FF)) + redondeo) >> BITS_FRACCION;
+
+        return (c & 0xFF000000)
+                | (Math.min(255, Math.max(0, r)) << 16)
+                | (Math.min(255, Math.max(0, g)) << 8)
+                | Math.min(255, Math.max(0, b));
+    }
+
+    /**
+     * Recorre una tesela de cualquier tipo de imagen mediante el acceso
+     * genérico del raster, fila a fila. Se realzan todas las bandas salvo la
+     * de alfa, que se copia.
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaGenerica(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        WritableRaster srcRaster = src.getRaster();
+        WritableRaster destRaster = dest.getRaster();
+        int ancho = srcRaster.getWidth();
+        int alto = srcRaster.getHeight();
+        int numBandas = srcRaster.getNumBands();
+        int numColor = src.getColorModel().hasAlpha() ? numBandas - 1 : numBandas;
+        int maximo = (1 << srcRaster.getSampleModel().getSampleSize(0)) - 1;
+        int redondeo = 1 << (BITS_FRACCION - 1);
+
+        int[] arriba = new int[ancho * numBandas];
+        int[] fila = new int[ancho * numBandas];
+        int[] abajo = new int[ancho * numBandas];
+        int[] salida = new int[tesela.width * numBandas];
+
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            srcRaster.getPixels(0, this.modoBorde.ajustar(y - 1, alto), ancho, 1, arriba);
+            srcRaster.getPixels(0, y, ancho, 1, fila);
+            srcRaster.getPixels(0, this.modoBorde.ajustar(y + 1, alto), ancho, 1, abajo);
+
+            for (int x = tesela.x; x < tesela.x + tesela.width; x++) {
+                int i = x * numBandas;
+                int io = this.modoBorde.ajustar(x - 1, ancho) * numBandas;
+                int ie = this.modoBorde.ajustar(x + 1, ancho) * numBandas;
+                int j = (x - tesela.x) * numBandas;
+
+                for (int b = 0; b < numBandas; b++) {
+                    int v = fila[i + b];
+                    if (b < numColor) {
+                        int lap = 4 * v - arriba[i + b] - abajo[i + b] - fila[io + b] - fila[ie + b];
+                        v += (int) (((long) this.factor * lap + redondeo) >> BITS_FRACCION);
+                        v = Math.min(maximo, Math.max(0, v));
+                    }
+                    salida[j + b] = v;
+                }
+            }
+
+            destRaster.setPixels(tesela.x, y, tesela.width, 1, salida);
+        }
+    }
+
+    /**
+     * Obtiene el factor de realce.
+     *
+     * @return el factor de realce a.
+     */
+    public float getA() {
+        return a;
+    }
+
+    /**
+     * Obtiene el modo de obtener los píxeles de fuera de la imagen.
+     *
+     * @return el modo de borde.
+     */
+    public ModoBorde getModoBorde() {
+        return modoBorde;
+    }
+}
@@ -5,38 +5,59 @@
 package sm.rlm.image;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import sm.image.BufferedImageOpAdapter;
 
 /**
  * Filtro de estilo Pop Art para imágenes.
  *
- * Esta operación convierte cada píxel de una imagen en uno de dos colores
- * planos (claro u oscuro), en función de su intensidad luminosa comparada con
- * un umbral.
+ * Esta operación convierte cada píxel de una imagen en uno de varios colores
+ * planos en función de su intensidad luminosa (media de R, G y B). En su forma
+ * básica usa dos colores (claro u oscuro) separados por un umbral; en general
+ * admite N umbrales crecientes y N+1 colores.
  *
- * Hereda de {@code BufferedImageOpAdapter} para facilitar la integración como
- * filtro gráfico.
+ * Como la intensidad solo depende de la suma R+G+B (0–765), al crear la
+ * operación se precalcula una tabla de 766 entradas con el color de cada suma,
+ * de forma que por cada píxel basta una suma y un acceso a la tabla.
+ *
+ * Hereda de {@code MiPixelOpAdapter} para facilitar la integración como
+ * filtro gráfico y poder procesarse por teselas.
  *
  * @author rober
  */
-public class PopArtOp extends BufferedImageOpAdapter {
+public class PopArtOp extends MiPixelOpAdapter {
+
+    /**
+     * Número máximo de umbrales con los que se usa la implementación
+     * vectorial, que compara cada píxel con todos ellos. Con más umbrales es
+     * más rápido el acceso a la tabla.
+     */
+    private static final int MAX_UMBRALES_VECTORIAL = 8;
+
+    /**
+     * Umbrales de intensidad, en orden creciente, que separan los colores.
+     */
+    private int[] umbrales;
+
+    /**
+     * Colores asignados a cada tramo de intensidad, del más oscuro al más
+     * claro. Hay un color más que umbrales.
+     */
+    private Color[] colores;
 
     /**
-     * Umbral de intensidad a partir del cual se aplica el color claro.
+     * Color RGB (sin alfa) que corresponde a cada suma R+G+B posible.
      */
-    private int umbral;
+    private int[] tabla = new int[3 * 255 + 1];
 
     /**
-     * Color que se aplica a los píxeles con intensidad mayor o igual al umbral.
+     * Suma R+G+B mínima de cada tramo (tres veces su umbral, limitada al
+     * rango de las sumas), para la implementación vectorial.
      */
-    private Color claro;
+    private int[] sumasUmbral;
 
     /**
-     * Color que se aplica a los píxeles con intensidad menor al umbral.
+     * Color RGB (sin alfa) de cada tramo, para la implementación vectorial.
      */
-    private Color oscuro;
+    private int[] coloresRgb;
 
     /**
      * Constructor de la operación Pop Art.
@@ -47,55 +68,128 @@ public class PopArtOp extends BufferedImageOpAdapter {
      * @param oscuro Color a asignar a los píxeles oscuros (intensidad).
      */
     public PopArtOp(int umbral, Color claro, Color oscuro) {
-        this.umbral = umbral;
-        this.claro = claro;
-        this.oscuro = oscuro;
+        this(new int[]{umbral}, new Color[]{oscuro, claro});
     }
 
     /**
-     * Aplica el filtro Pop Art sobre una imagen de entrada.
+     * Constructor de la operación Pop Art con varios niveles.
      *
-     * Calcula la intensidad media de cada píxel (promedio de R, G y B) y aplica
-     * uno de los dos colores definidos según si la intensidad supera el umbral.
+     * Un píxel con intensidad menor que {@code umbrales[0]} recibe
+     * {@code colores[0]}; si su intensidad es mayor o igual que
+     * {@code umbrales[i]} y menor que {@code umbrales[i + 1]}, recibe
+     * {@code colores[i + 1]}.
      *
-     * @param src Imagen fuente sobre la que se aplica el filtro.
-     * @param dest Imagen de destino donde se guarda el resultado. Si es
-     * {@code null}, se crea una nueva.
-     * @return Imagen resultante con el efecto Pop Art aplicado.
-     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @param umbrales Umbrales de intensidad [0–255] en orden creciente.
+     * @param colores Colores de cada tramo, del más oscuro al más claro (uno
+     * más que umbrales).
+     * @throws IllegalArgumentException si el número de colores no es el de
+     * umbrales más uno o si los umbrales no están en orden creciente.
      */
-    @Override
-    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        if (src == null) {
-            throw new NullPointerException("src image is null");
+    public PopArtOp(int[] umbrales, Color[] colores) {
+        if (colores.length != umbrales.length + 1) {
+            throw new IllegalArgumentException("Debe haber un color más que umbrales");
         }
-        
-        if (dest == null) {
-            dest = createCompatibleDestImage(src, null);
+        for (int i = 1; i < umbrales.length; i++) {
+            if (umbrales[i] < umbrales[i - 1]) {
+                throw new IllegalArgumentException("Los umbrales deben estar en orden creciente");
+            }
         }
 
-        WritableRaster srcRaster = src.getRaster();
-        WritableRaster destRaster = dest.getRaster();
+        this.umbrales = umbrales.clone();
+        this.colores = colores.clone();
+
+        for (int suma = 0; suma < this.tabla.length; suma++) {
+            int intensidad = suma / 3;
+            int nivel = 0;
+            while (nivel < this.umbrales.length && intensidad >= this.umbrales[nivel]) {
+                nivel++;
+            }
+            this.tabla[suma] = this.colores[nivel].getRGB() & 0xFFFFFF;
+        }
 
-        int[] pixel = new int[3];
+        // intensidad >= umbral equivale a suma >= 3 * umbral
+        this.sumasUmbral = new int[this.umbrales.length];
+        for (int i = 0; i < this.umbrales.length; i++) {
+            this.sumasUmbral[i] = 3 * Math.max(0, Math.min(256, this.umbrales[i]));
+        }
+        this.coloresRgb = new int[this.colores.length];
+        for (int i = 0; i < this.colores.length; i++) {
+            this.coloresRgb[i] = this.colores[i].getRGB() & 0xFFFFFF;
+        }
+    }
 
-        for (int x = 0; x < src.getWidth(); x++) {
-            for (int y = 0; y < src.getHeight(); y++) {
-                srcRaster.getPixel(x, y, pixel);
-                int r = pixel[0];
-                int g = pixel[1];
-                int b = pixel[2];
+    /**
+     * Aplica el filtro Pop Art sobre un píxel.
+     *
+     * Calcula la suma de R, G y B del píxel y toma de la tabla el color del
+     * tramo de intensidad correspondiente. El alfa se conserva.
+     *
+     * @param argb Color del píxel fuente (0xAARRGGBB).
+     * @return Color del píxel resultante (0xAARRGGBB).
+     */
+    @Override
+    public int filtrarPixel(int argb) {
+        int suma = ((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF);
+        return (argb & 0xFF000000) | this.tabla[suma];
+    }
 
-                int intensidad = (r + g + b) / 3;
+    /**
+     * Aplica el filtro Pop Art sobre una fila de píxeles, sin llamadas por
+     * píxel. Si la Vector API está disponible y hay como mucho
+     * {@link #MAX_UMBRALES_VECTORIAL} umbrales, los píxeles que caben en
+     * vectores completos se procesan con la implementación vectorial
+     * equivalente.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles a procesar.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído.
+     */
+    @Override
+    protected void filtrarFila(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa) {
+        int k = usarVectorial()
+                ? NucleosVectoriales.popArt(src, srcPos, dest, destPos, longitud, alfa, this.sumasUmbral, this.coloresRgb)
+                : 0;
 
-                Color nuevoColor = (intensidad >= this.umbral) ? this.claro : this.oscuro;
-                destRaster.setPixel(x, y, new int[] {
-                    nuevoColor.getRed(), nuevoColor.getGreen(), nuevoColor.getBlue()
-                });
-            }
+        int[] t = this.tabla;
+        for (; k < longitud; k++) {
+            int argb = src[srcPos + k] | alfa;
+            int suma = ((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF);
+            dest[destPos + k] = (argb & 0xFF000000) | t[suma];
         }
+    }
 
-        return dest;
+    /**
+     * Aplica el filtro Pop Art directamente sobre las muestras de una fila de
+     * una imagen de bytes entrelazados, con la implementación vectorial si
+     * está disponible.
+     *
+     * @param src Array con las muestras fuente.
+     * @param srcPos Posición de la primera muestra del primer píxel fuente.
+     * @param dest Array donde se escriben las muestras resultantes.
+     * @param destPos Posición de la primera muestra del primer píxel de
+     * destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param conAlfa true si la imagen es {@code TYPE_4BYTE_ABGR}.
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    @Override
+    protected int filtrarFilaByte(byte[] src, int srcPos, byte[] dest, int destPos, int longitud, boolean conAlfa) {
+        return usarVectorial()
+                ? NucleosVectoriales.popArt(src, srcPos, dest, destPos, longitud, conAlfa, this.sumasUmbral, this.coloresRgb)
+                : 0;
+    }
+
+    /**
+     * Indica si se usa la implementación vectorial.
+     *
+     * @return true si la Vector API está disponible y el número de umbrales
+     * no supera {@link #MAX_UMBRALES_VECTORIAL}.
+     */
+    private boolean usarVectorial() {
+        return VECTORIAL && this.umbrales.length <= MAX_UMBRALES_VECTORIAL;
     }
-    
+
 }
@@ -4,9 +4,12 @@
  */
 package sm.rlm.image;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
-import sm.image.BufferedImageOpAdapter;
 
 /**
  * Filtro de posterización que reduce la cantidad de niveles de color por canal.
@@ -15,15 +18,55 @@ import sm.image.BufferedImageOpAdapter;
  * de color, agrupando los valores de cada canal (R, G, B) en bloques. Produce
  * un efecto visual de tipo "paleta limitada".
  *
+ * Como el resultado de cada muestra de 8 bits solo depende de su valor, la
+ * correspondencia se calcula una sola vez en una tabla de 256 entradas al crear
+ * la operación. Opcionalmente se puede aplicar un tramado ordenado (matriz de
+ * Bayer 4x4) que suaviza las transiciones entre niveles usando la misma tabla.
+ * El tramado solo se aplica a los canales de color: el alfa se posteriza sin
+ * tramado, para no introducir el patrón en la transparencia.
+ * Sin tramado la operación es puntual y se puede fusionar con otras mediante
+ * {@link CadenaOp}.
+ *
+ * Con o sin tramado, la imagen de destino puede ser la misma que la fuente,
+ * para filtrar la imagen en el sitio.
+ *
  * @author rober
  */
-public class PosterizarOp extends BufferedImageOpAdapter {
+public class PosterizarOp extends MiBufferedImageOpAdapter implements OperacionPuntual {
+
+    /**
+     * Matriz de Bayer 4x4 usada para el tramado ordenado.
+     */
+    private static final int[][] BAYER = {
+        {0, 8, 2, 10},
+        {12, 4, 14, 6},
+        {3, 11, 1, 9},
+        {15, 7, 13, 5}
+    };
 
     /**
      * Número de niveles a los que se reduce cada canal de color (debe ser > 1).
      */
     private int niveles;
 
+    /**
+     * Indica si se aplica tramado ordenado.
+     */
+    private boolean tramado;
+
+    /**
+     * Tabla con el valor posterizado de cada muestra. Tiene entradas
+     * adicionales por encima de 255 (saturadas a la última) para poder sumar el
+     * desplazamiento del tramado sin comprobar el rango.
+     */
+    private byte[] tabla;
+
+    /**
+     * Desplazamiento que el tramado suma a cada muestra según la posición del
+     * píxel, indexado por [y % 4][x % 4]. Todo ceros si no hay tramado.
+     */
+    private int[][] desplazamientos = new int[4][4];
+
     /**
      * Constructor del filtro Posterizar.
      *
@@ -31,11 +74,40 @@ public class PosterizarOp extends BufferedImageOpAdapter {
      * menores a 256 provocan agrupaciones y pérdida de detalle.
      */
     public PosterizarOp(int niveles) {
+        this(niveles, false);
+    }
+
+    /**
+     * Constructor del filtro Posterizar con tramado opcional.
+     *
+     * @param niveles Número de niveles de color a aplicar (por canal). Valores
+     * menores a 256 provocan agrupaciones y pérdida de detalle.
+     * @param tramado true para aplicar tramado ordenado, que sustituye las
+     * bandas de color por un patrón regular de los dos niveles más cercanos.
+     */
+    public PosterizarOp(int niveles, boolean tramado) {
         this.niveles = niveles;
+        this.tramado = tramado;
+
+        int maxDesplazamiento = 0;
+        if (tramado) {
+            float k = 256.0f / niveles;
+            for (int fila = 0; fila < 4; fila++) {
+                for (int col = 0; col < 4; col++) {
+                    this.desplazamientos[fila][col] = (int) ((BAYER[fila][col] + 0.5f) * k / 16);
+                    maxDesplazamiento = Math.max(maxDesplazamiento, this.desplazamientos[fila][col]);
+                }
+            }
+        }
+
+        this.tabla = new byte[256 + maxDesplazamiento];
+        for (int i = 0; i < this.tabla.length; i++) {
+            this.tabla[i] = (byte) posterizar(Math.min(i, 255));
+        }
     }
 
     /**
-     * Aplica el filtro de posterización sobre una imagen.
+     * Aplica el filtro de posterización sobre una tesela de la imagen.
      *
      * Reduce el número de niveles posibles para cada canal de color RGB,
      * agrupando los valores de color en bandas equidistantes.
@@ -44,40 +116,179 @@ public class PosterizarOp extends BufferedImageOpAdapter {
      * (0–255) se reduce a uno de los valores: 0, 64, 128, 192.
      *
      * @param src Imagen fuente sobre la que se aplica el filtro.
-     * @param dest Imagen de destino. Si es {@code null}, se crea una nueva
-     * compatible.
-     * @return Imagen resultante con los niveles de color reducidos.
-     * @throws NullPointerException si la imagen fuente es {@code null}.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
      */
     @Override
-    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        if (src == null) {
-            throw new NullPointerException("src image is null");
-        }
+    protected void filtrarTesela(BufferedImage src, BufferedImage dest, Rectangle tesela) {
+        boolean mismoTipo = src.getType() == dest.getType();
 
-        if (dest == null) {
-            dest = createCompatibleDestImage(src, null);
+        if (mismoTipo && esEmpaquetadaInt(src)) {
+            filtrarTeselaInt(src, dest, tesela);
+        } else if (mismoTipo && (esEntrelazadaByte(src) || src.getType() == BufferedImage.TYPE_BYTE_GRAY)) {
+            filtrarTeselaByte(src.getRaster(), dest.getRaster(), tesela, src.getColorModel().getNumColorComponents());
+        } else {
+            filtrarTeselaGenerica(src.getRaster(), dest.getRaster(), tesela, src.getColorModel().getNumColorComponents());
         }
+    }
 
+    /**
+     * Posteriza los cuatro canales de un píxel empaquetado, sin tramado.
+     *
+     * @param argb Color del píxel fuente (0xAARRGGBB).
+     * @return Color del píxel posterizado (0xAARRGGBB).
+     */
+    @Override
+    public int filtrarPixel(int argb) {
+        byte[] t = this.tabla;
+        return ((t[argb >>> 24] & 0xFF) << 24)
+                | ((t[(argb >> 16) & 0xFF] & 0xFF) << 16)
+                | ((t[(argb >> 8) & 0xFF] & 0xFF) << 8)
+                | (t[argb & 0xFF] & 0xFF);
+    }
+
+    /**
+     * Indica si la operación es puntual, lo que solo ocurre sin tramado (el
+     * tramado depende de la posición del píxel).
+     *
+     * @return true si no se aplica tramado.
+     */
+    @Override
+    public boolean esPuntual() {
+        return !this.tramado;
+    }
+
+    /**
+     * Posteriza una muestra de 8 bits de un canal. Solo se usa para construir
+     * la tabla.
+     *
+     * @param sample Valor de la muestra.
+     * @return Valor posterizado de la muestra.
+     */
+    private int posterizar(int sample) {
+        float k = 256.0f / this.niveles;
+        return (int) (k * (int) (sample / k));
+    }
+
+    /**
+     * Recorre una tesela de imágenes con píxeles empaquetados en enteros,
+     * posterizando cada canal de 8 bits (incluido el alfa si lo hay, sin
+     * tramado).
+     *
+     * @param src Imagen fuente.
+     * @param dest Imagen de destino.
+     * @param tesela Región de la imagen a procesar.
+     */
+    private void filtrarTeselaInt(BufferedImage src, BufferedImage dest, Rectangle tesela) {
         WritableRaster srcRaster = src.getRaster();
         WritableRaster destRaster = dest.getRaster();
+        int[] srcData = ((DataBufferInt) srcRaster.getDataBuffer()).getData();
+        int[] destData = ((DataBufferInt) destRaster.getDataBuffer()).getData();
+        int mascaraAlfa = src.getColorModel().hasAlpha() ? 0xFF : 0;
+        byte[] t = this.tabla;
 
-        int sample;
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int[] desp = this.desplazamientos[y & 3];
+            int i = getIndicePixel(srcRaster, tesela.x, y);
+            int j = getIndicePixel(destRaster, tesela.x, y);
 
-        float k = 256.0f / this.niveles;
+            for (int x = tesela.x; x < tesela.x + tesela.width; x++, i++, j++) {
+                int p = srcData[i];
+                int d = desp[x & 3];
+                destData[j] = ((t[p >>> 24] & mascaraAlfa) << 24)
+                        | ((t[((p >> 16) & 0xFF) + d] & 0xFF) << 16)
+                        | ((t[((p >> 8) & 0xFF) + d] & 0xFF) << 8)
+                        | (t[(p & 0xFF) + d] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Recorre una tesela de imágenes con muestras de 8 bits entrelazadas,
+     * posterizando todas las muestras de cada fila.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     * @param numColores Número de bandas de color; las siguientes son de alfa
+     * y no se traman.
+     */
+    private void filtrarTeselaByte(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela,
+            int numColores) {
+        byte[] srcData = ((DataBufferByte) srcRaster.getDataBuffer()).getData();
+        byte[] destData = ((DataBufferByte) destRaster.getDataBuffer()).getData();
+        ComponentSampleModel sm = (ComponentSampleModel) srcRaster.getSampleModel();
+        int paso = sm.getPixelStride();
+        byte[] t = this.tabla;
 
-        for (int x = 0; x < src.getWidth(); x++) {
-            for (int y = 0; y < src.getHeight(); y++) {
-                for (int band = 0; band < srcRaster.getNumBands(); band++) {
-                    sample = srcRaster.getSample(x, y, band);
+        // Máscara del tramado según la posición de la muestra en el píxel:
+        // todo unos en las bandas de color y cero en la de alfa
+        int[] mascaras = new int[paso];
+        int[] offsets = sm.getBandOffsets();
+        for (int b = 0; b < offsets.length; b++) {
+            mascaras[offsets[b]] = (b < numColores) ? -1 : 0;
+        }
 
-                    sample = (int) (k * (int) (sample / k));
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int i = getIndicePixel(srcRaster, tesela.x, y);
+            int j = getIndicePixel(destRaster, tesela.x, y);
+            int fin = i + tesela.width * paso;
 
-                    destRaster.setSample(x, y, band, sample);
+            if (!this.tramado) {
+                for (; i < fin; i++, j++) {
+                    destData[j] = t[srcData[i] & 0xFF];
+                }
+            } else {
+                int[] desp = this.desplazamientos[y & 3];
+                for (int x = tesela.x; i < fin; x++) {
+                    int d = desp[x & 3];
+                    for (int b = 0; b < paso; b++, i++, j++) {
+                        destData[j] = t[(srcData[i] & 0xFF) + (d & mascaras[b])];
+                    }
                 }
             }
         }
+    }
+
+    /**
+     * Recorre una tesela de cualquier tipo de imagen mediante el acceso
+     * genérico del raster, fila a fila.
+     *
+     * Las muestras que no son de 8 bits se escalan a 8 bits antes de usar la
+     * tabla y se vuelven a escalar a su profundidad al escribirlas, de modo
+     * que los niveles y el tramado son los mismos para cualquier profundidad.
+     *
+     * @param srcRaster Raster fuente.
+     * @param destRaster Raster de destino.
+     * @param tesela Región de la imagen a procesar.
+     * @param numColores Número de bandas de color; las siguientes son de alfa
+     * y no se traman.
+     */
+    private void filtrarTeselaGenerica(WritableRaster srcRaster, WritableRaster destRaster, Rectangle tesela,
+            int numColores) {
+        int numBandas = srcRaster.getNumBands();
+        int[] maxSrc = getMaximos(srcRaster);
+        int[] maxDest = getMaximos(destRaster);
+        int[] fila = new int[tesela.width * numBandas];
 
-        return dest;
+        for (int y = tesela.y; y < tesela.y + tesela.height; y++) {
+            int[] desp = this.desplazamientos[y & 3];
+            srcRaster.getPixels(tesela.x, y, tesela.width, 1, fila);
+            if (maxSrc != null) {
+                escalarMuestras(fila, maxSrc, true);
+            }
+
+            for (int i = 0, x = tesela.x; i < fila.length; x++) {
+                int d = desp[x & 3];
+                for (int b = 0; b < numBandas; b++, i++) {
+                    fila[i] = this.tabla[fila[i] + ((b < numColores) ? d : 0)] & 0xFF;
+                }
+            }
+
+            if (maxDest != null) {
+                escalarMuestras(fila, maxDest, false);
+            }
+            destRaster.setPixels(tesela.x, y, tesela.width, 1, fila);
+        }
     }
 }
@@ -0,0 +1,601 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * Procesador por lotes que aplica una operación de imagen a una lista de
+ * ficheros y guarda los resultados en un directorio.
+ *
+ * Cada fichero se procesa en tres etapas: lectura (decodificación), filtrado
+ * y escritura (codificación). La lectura y la escritura se hacen en hilos
+ * virtuales, uno por fichero, mientras que el filtrado se ejecuta en un pool
+ * acotado de hilos de cálculo. De este modo la entrada/salida de unos ficheros
+ * se solapa con el cálculo de otros.
+ *
+ * Para que las imágenes decodificadas no se acumulen en memoria, solo se
+ * permite un número máximo de ficheros en proceso a la vez: un fichero no se
+ * empieza a leer hasta que otro ha terminado de escribirse.
+ *
+ * La operación se comparte entre los hilos de cálculo, por lo que debe poder
+ * usarse desde varios hilos a la vez (lo cumplen las operaciones de esta
+ * librería y las de {@code java.awt.image}).
+ *
+ * Los nombres de salida se asignan antes de empezar: si dos entradas dan el
+ * mismo nombre, las siguientes llevan un sufijo numérico ({@code foto_2.png},
+ * {@code foto_3.png}...), y una entrada cuya salida sobrescribiría alguno de
+ * los ficheros de entrada no se procesa y se anota como error.
+ *
+ * También se puede usar desde la línea de comandos (véase
+ * {@link #main(String[])}).
+ *
+ * @author rober
+ */
+public class ProcesadorLotes {
+
+    /**
+     * Operación que se aplica a cada imagen.
+     */
+    private BufferedImageOp op;
+
+    /**
+     * Número de hilos del pool de cálculo.
+     */
+    private int hilosCalculo = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Número máximo de ficheros en proceso (leídos y aún sin escribir).
+     */
+    private int maxEnProceso = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Formato de salida, o {@code null} para usar el del fichero de entrada.
+     */
+    private String formato = null;
+
+    /**
+     * Constructor del procesador por lotes.
+     *
+     * @param op Operación a aplicar a cada imagen.
+     */
+    public ProcesadorLotes(BufferedImageOp op) {
+        this.op = op;
+    }
+
+    /**
+     * Procesa una lista de ficheros de imagen. Los errores de un fichero no
+     * detienen el resto del lote; se anotan en las estadísticas.
+     *
+     * @param entradas Ficheros de imagen a procesar.
+     * @param dirSalida Directorio donde se guardan los resultados, con el mismo
+     * nombre que el fichero de entrada (cambiando la extensión si se ha fijado
+     * otro formato y con un sufijo si el nombre ya se ha usado en el lote).
+     * Nunca se sobrescribe un fichero de entrada.
+     * @return Estadísticas del procesado.
+     * @throws IOException si no se puede crear el directorio de salida.
+     * @throws InterruptedException si se interrumpe el hilo mientras espera.
+     */
+    public Estadisticas procesar(List<Path> entradas, Path dirSalida) throws IOException, InterruptedException {
+        Files.createDirectories(dirSalida);
+
+        Estadisticas estadisticas = new Estadisticas();
+        List<Path> salidas = asignarSalidas(entradas, dirSalida, estadisticas);
+        Semaphore enProceso = new Semaphore(this.maxEnProceso);
+        ExecutorService calculo = Executors.newFixedThreadPool(this.hilosCalculo);
+        long inicio = System.nanoTime();
+
+        try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int k = 0; k < entradas.size(); k++) {
+                Path entrada = entradas.get(k);
+                Path salida = salidas.get(k);
+                if (salida == null) {
+                    continue;
+                }
+                io.submit(() -> {
+                    try {
+                        enProceso.acquire();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    try {
+                        procesarFichero(entrada, salida, calculo, estadisticas);
+                    } catch (IOException | ExecutionException | RuntimeException ex) {
+                        estadisticas.anotarError(entrada, ex);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        enProceso.release();
+                    }
+                });
+            }
+        } finally {
+            // El cierre del ejecutor de E/S espera a que terminen todos los ficheros
+            calculo.shutdown();
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        estadisticas.tiempoTotal = System.nanoTime() - inicio;
+        return estadisticas;
+    }
+
+    /**
+     * Calcula el fichero de salida de cada entrada. Los nombres repetidos
+     * reciben un sufijo numérico. Las entradas cuya salida coincide con un
+     * fichero de entrada se anotan como error y no tienen salida.
+     *
+     * @param entradas Ficheros de imagen a procesar.
+     * @param dirSalida Directorio de salida.
+     * @param estadisticas Estadísticas donde se anotan los errores.
+     * @return Fichero de salida de cada entrada, en el mismo orden, o
+     * {@code null} si la entrada no se debe procesar.
+     */
+    private List<Path> asignarSalidas(List<Path> entradas, Path dirSalida, Estadisticas estadisticas) {
+        Set<Path> originales = new HashSet<>();
+        for (Path entrada : entradas) {
+            originales.add(normalizar(entrada));
+        }
+
+        Set<Path> usadas = new HashSet<>();
+        List<Path> salidas = new ArrayList<>(entradas.size());
+        for (Path entrada : entradas) {
+            String nombre = entrada.getFileName().toString();
+            int punto = nombre.lastIndexOf('.');
+            String base = (punto < 0) ? nombre : nombre.substring(0, punto);
+            String extension = "." + getFormatoSalida(entrada);
+
+            Path salida = dirSalida.resolve(base + extension);
+            if (originales.contains(normalizar(salida))) {
+                estadisticas.anotarError(entrada,
+                        new IOException("La salida sobrescribiría un fichero de entrada: " + salida));
+                salidas.add(null);
+                continue;
+            }
+            for (int n = 2; usadas.contains(normalizar(salida)) || originales.contains(normalizar(salida)); n++) {
+                salida = dirSalida.resolve(base + "_" + n + extension);
+            }
+            usadas.add(normalizar(salida));
+            salidas.add(salida);
+        }
+        return salidas;
+    }
+
+    /**
+     * Obtiene una forma única de una ruta para poder compararla con otras: la
+     * ruta real si el fichero existe (resolviendo enlaces y mayúsculas en
+     * los sistemas que no las distinguen) o, si no, la ruta absoluta
+     * normalizada.
+     *
+     * @param ruta Ruta del fichero.
+     * @return Ruta normalizada.
+     */
+    private static Path normalizar(Path ruta) {
+        try {
+            return ruta.toRealPath();
+        } catch (IOException ex) {
+            return ruta.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Lee, filtra y escribe un fichero, midiendo el tiempo de cada etapa.
+     *
+     * @param entrada Fichero de imagen a procesar.
+     * @param salida Fichero donde se guarda el resultado.
+     * @param calculo Pool donde se ejecuta el filtrado.
+     * @param estadisticas Estadísticas donde se acumulan los tiempos.
+     * @throws IOException si hay un error de lectura o escritura.
+     * @throws ExecutionException si la operación lanza una excepción.
+     * @throws InterruptedException si se interrumpe la espera del filtrado.
+     */
+    private void procesarFichero(Path entrada, Path salida, ExecutorService calculo, Estadisticas estadisticas)
+            throws IOException, ExecutionException, InterruptedException {
+        long t0 = System.nanoTime();
+        BufferedImage src = ImageIO.read(entrada.toFile());
+        if (src == null) {
+            throw new IOException("Formato de imagen no soportado");
+        }
+
+        long t1 = System.nanoTime();
+        BufferedImage dest = calculo.submit(() -> this.op.filter(src, null)).get();
+
+        long t2 = System.nanoTime();
+        String formatoSalida = getFormatoSalida(entrada);
+        if (!ImageIO.write(dest, formatoSalida, salida.toFile())) {
+            throw new IOException(describirFalloEscritura(dest, formatoSalida));
+        }
+
+        long t3 = System.nanoTime();
+        estadisticas.anotar((long) src.getWidth() * src.getHeight(), t1 - t0, t2 - t1, t3 - t2);
+    }
+
+    /**
+     * Obtiene la extensión de un fichero, en minúsculas.
+     *
+     * @param fichero Ruta del fichero.
+     * @return Extensión sin el punto (cadena vacía si no tiene).
+     */
+    private static String getExtension(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        return (punto < 0) ? "" : nombre.substring(punto + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Obtiene el formato en que se escribe el resultado de una entrada.
+     *
+     * @param entrada Fichero de entrada.
+     * @return El formato fijado o, si no hay, la extensión de la entrada.
+     */
+    private String getFormatoSalida(Path entrada) {
+        return (this.formato != null) ? this.formato : getExtension(entrada);
+    }
+
+    /**
+     * Explica por qué {@code ImageIO.write} no ha escrito una imagen: no hay
+     * escritor para el formato, o lo hay pero no admite el tipo de la imagen
+     * (por ejemplo, una imagen con alfa en JPEG).
+     *
+     * @param img Imagen que no se ha podido escribir.
+     * @param formato Formato de salida.
+     * @return Descripción del motivo.
+     */
+    private static String describirFalloEscritura(BufferedImage img, String formato) {
+        if (!ImageIO.getImageWritersByFormatName(formato).hasNext()) {
+            return "No hay escritor para el formato " + formato;
+        }
+        if (!ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(img), formato).hasNext()) {
+            return String.format(Locale.ROOT, "El formato %s no admite esta imagen (%d bandas, %s alfa)",
+                    formato, img.getRaster().getNumBands(), img.getColorModel().hasAlpha() ? "con" : "sin");
+        }
+        return "El escritor del formato " + formato + " no ha podido escribir la imagen";
+    }
+
+    /**
+     * Obtiene el número de hilos del pool de cálculo.
+     *
+     * @return el número de hilos de cálculo.
+     */
+    public int getHilosCalculo() {
+        return hilosCalculo;
+    }
+
+    /**
+     * Establece el número de hilos del pool de cálculo.
+     *
+     * @param hilosCalculo número de hilos de cálculo.
+     * @throws IllegalArgumentException si el número es menor que 1.
+     */
+    public void setHilosCalculo(int hilosCalculo) {
+        if (hilosCalculo < 1) {
+            throw new IllegalArgumentException("Debe haber al menos un hilo de cálculo");
+        }
+        this.hilosCalculo = hilosCalculo;
+    }
+
+    /**
+     * Obtiene el número máximo de ficheros en proceso a la vez.
+     *
+     * @return el máximo de ficheros en proceso.
+     */
+    public int getMaxEnProceso() {
+        return maxEnProceso;
+    }
+
+    /**
+     * Establece el número máximo de ficheros en proceso a la vez, que limita
+     * las imágenes decodificadas que hay en memoria.
+     *
+     * @param maxEnProceso máximo de ficheros en proceso.
+     * @throws IllegalArgumentException si el número es menor que 1.
+     */
+    public void setMaxEnProceso(int maxEnProceso) {
+        if (maxEnProceso < 1) {
+            throw new IllegalArgumentException("Debe poder procesarse al menos un fichero");
+        }
+        this.maxEnProceso = maxEnProceso;
+    }
+
+    /**
+     * Obtiene el formato de salida.
+     *
+     * @return el formato, o {@code null} si se usa el de cada fichero de
+     * entrada.
+     */
+    public String getFormato() {
+        return formato;
+    }
+
+    /**
+     * Establece el formato de salida (por ejemplo "png").
+     *
+     * @param formato formato de salida, o {@code null} para usar el de cada
+     * fichero de entrada.
+     */
+    public void setFormato(String formato) {
+        this.formato = formato;
+    }
+
+    /**
+     * Estadísticas de un procesado por lotes: número de imágenes y errores, y
+     * tiempo acumulado en cada etapa. Es segura entre hilos.
+     */
+    public static class Estadisticas {
+
+        private final LongAdder imagenes = new LongAdder();
+        private final LongAdder pixeles = new LongAdder();
+        private final LongAdder tiempoLectura = new LongAdder();
+        private final LongAdder tiempoFiltrado = new LongAdder();
+        private final LongAdder tiempoEscritura = new LongAdder();
+        private final List<String> errores = Collections.synchronizedList(new ArrayList<>());
+        private long tiempoTotal;
+
+        private void anotar(long numPixeles, long lectura, long filtrado, long escritura) {
+            this.imagenes.increment();
+            this.pixeles.add(numPixeles);
+            this.tiempoLectura.add(lectura);
+            this.tiempoFiltrado.add(filtrado);
+            this.tiempoEscritura.add(escritura);
+        }
+
+        private void anotarError(Path fichero, Exception ex) {
+            this.errores.add(fichero + ": " + ex);
+        }
+
+        /**
+         * Obtiene el número de imágenes procesadas correctamente.
+         *
+         * @return número de imágenes.
+         */
+        public long getImagenes() {
+            return this.imagenes.sum();
+        }
+
+        /**
+         * Obtiene el número total de píxeles procesados.
+         *
+         * @return número de píxeles.
+         */
+        public long getPixeles() {
+            return this.pixeles.sum();
+        }
+
+        /**
+         * Obtiene los ficheros que no se pudieron procesar y el motivo.
+         *
+         * @return lista con una descripción por fichero.
+         */
+        public List<String> getErrores() {
+            return List.copyOf(this.errores);
+        }
+
+        /**
+         * Obtiene el tiempo acumulado de lectura (suma de todos los hilos).
+         *
+         * @return tiempo en nanosegundos.
+         */
+        public long getTiempoLectura() {
+            return this.tiempoLectura.sum();
+        }
+
+        /**
+         * Obtiene el tiempo acumulado de filtrado (suma de todos los hilos).
+         *
+         * @return tiempo en nanosegundos.
+         */
+        public long getTiempoFiltrado() {
+            return this.tiempoFiltrado.sum();
+        }
+
+        /**
+         * Obtiene el tiempo acumulado de escritura (suma de todos los hilos).
+         *
+         * @return tiempo en nanosegundos.
+         */
+        public long getTiempoEscritura() {
+            return this.tiempoEscritura.sum();
+        }
+
+        /**
+         * Obtiene el tiempo real transcurrido en el procesado del lote.
+         *
+         * @return tiempo en nanosegundos.
+         */
+        public long getTiempoTotal() {
+            return this.tiempoTotal;
+        }
+
+        /**
+         * Resume las estadísticas: imágenes por segundo y, para cada etapa,
+         * megapíxeles por segundo de cada hilo que trabaja en ella.
+         *
+         * @return texto con el resumen.
+         */
+        @Override
+        public String toString() {
+            if (getImagenes() == 0) {
+                return String.format(Locale.ROOT, "0 imágenes (%d errores)", this.errores.size());
+            }
+            double mp = getPixeles() / 1e6;
+            return String.format(Locale.ROOT,
+                    "%d imágenes (%d errores) en %.2f s: %.1f imágenes/s, %.1f MP/s%n"
+                    + "  lectura:   %.1f MP/s por hilo%n"
+                    + "  filtrado:  %.1f MP/s por hilo%n"
+                    + "  escritura: %.1f MP/s por hilo",
+                    getImagenes(), this.errores.size(), this.tiempoTotal / 1e9,
+                    getImagenes() / (this.tiempoTotal / 1e9), mp / (this.tiempoTotal / 1e9),
+                    mp / (getTiempoLectura() / 1e9),
+                    mp / (getTiempoFiltrado() / 1e9),
+                    mp / (getTiempoEscritura() / 1e9));
+        }
+    }
+
+    /**
+     * Crea una operación a partir de su descripción textual. Varias
+     * operaciones separadas por comas se encadenan con {@link CadenaOp}.
+     *
+     * Operaciones admitidas: {@code rojo[:umbral]},
+     * {@code popart[:umbral]}, {@code posterizar[:niveles]},
+     * {@code tramado[:niveles]}, {@code media[:lado]},
+     * {@code perfilado[:a]}, {@code sepia}, {@code grises} y
+     * {@code abc:a:b:c}.
+     *
+     * @param descripcion Descripción de la operación, por ejemplo
+     * {@code "media:5,posterizar:4"}.
+     * @return Operación descrita.
+     * @throws IllegalArgumentException si alguna operación no se reconoce.
+     */
+    public static BufferedImageOp crearOperacion(String descripcion) {
+        String[] partes = descripcion.split(",");
+        if (partes.length > 1) {
+            BufferedImageOp[] ops = new BufferedImageOp[partes.length];
+            for (int i = 0; i < partes.length; i++) {
+                ops[i] = crearOperacion(partes[i]);
+            }
+            return new CadenaOp(ops);
+        }
+
+        String[] p = descripcion.trim().split(":");
+        switch (p[0]) {
+            case "rojo":
+                return new RojoOp(p.length > 1 ? Integer.parseInt(p[1]) : 20);
+            case "popart":
+                return new PopArtOp(p.length > 1 ? Integer.parseInt(p[1]) : 128, Color.YELLOW, Color.BLUE);
+            case "posterizar":
+                return new PosterizarOp(p.length > 1 ? Integer.parseInt(p[1]) : 4);
+            case "tramado":
+                return new PosterizarOp(p.length > 1 ? Integer.parseInt(p[1]) : 4, true);
+            case "media":
+                return new MediaOp(p.length > 1 ? Integer.parseInt(p[1]) : 5);
+            case "perfilado":
+                return new PerfiladoOp(p.length > 1 ? Float.parseFloat(p[1]) : 1.0f);
+            case "sepia":
+                return MatrizColorOp.crearSepia();
+            case "grises":
+                return MatrizColorOp.crearEscalaGrises();
+            case "abc":
+                if (p.length != 4) {
+                    throw new IllegalArgumentException("abc necesita tres valores: abc:a:b:c");
+                }
+                return MiLookupTableProducer.createLookupOpABC(
+                        Integer.parseInt(p[1]), Integer.parseInt(p[2]), Integer.parseInt(p[3]));
+            default:
+                throw new IllegalArgumentException("Operación desconocida: " + p[0]);
+        }
+    }
+
+    /**
+     * Punto de entrada para la línea de comandos.
+     *
+     * Uso: {@code ProcesadorLotes [-hilos N] [-enproceso N] [-formato F]
+     * <operaciones> <dirSalida> <fichero|directorio>...}. Los directorios se
+     * recorren (sin entrar en subdirectorios) tomando los ficheros con
+     * extensión de imagen conocida.
+     *
+     * @param args Argumentos de la línea de comandos.
+     * @throws Exception si hay un error de entrada/salida o de argumentos.
+     */
+    public static void main(String[] args) throws Exception {
+        int i = 0;
+        Integer hilos = null;
+        Integer enProceso = null;
+        String formato = null;
+        while (i < args.length && args[i].startsWith("-")) {
+            switch (args[i]) {
+                case "-hilos":
+                    hilos = Integer.valueOf(args[++i]);
+                    break;
+                case "-enproceso":
+                    enProceso = Integer.valueOf(args[++i]);
+                    break;
+                case "-formato":
+                    formato = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+            i++;
+        }
+
+        if (args.length - i < 3) {
+            System.err.println("Uso: ProcesadorLotes [-hilos N] [-enproceso N] [-formato F]"
+                    + " <operaciones> <dirSalida> <fichero|directorio>...");
+            System.err.println("Ejemplo: ProcesadorLotes media:5,posterizar:4 salida fotos");
+            System.exit(2);
+        }
+
+        ProcesadorLotes procesador = new ProcesadorLotes(crearOperacion(args[i]));
+        if (hilos != null) {
+            procesador.setHilosCalculo(hilos);
+        }
+        if (enProceso != null) {
+            procesador.setMaxEnProceso(enProceso);
+        }
+        procesador.setFormato(formato);
+
+        Path dirSalida = Paths.get(args[i + 1]);
+        List<Path> entradas = new ArrayList<>();
+        for (int j = i + 2; j < args.length; j++) {
+            Path ruta = Paths.get(args[j]);
+            if (Files.isDirectory(ruta)) {
+                try (Stream<Path> contenido = Files.list(ruta)) {
+                    contenido.filter(ProcesadorLotes::esImagen).sorted().forEach(entradas::add);
+                }
+            } else {
+                entradas.add(ruta);
+            }
+        }
+
+        Estadisticas estadisticas = procesador.procesar(entradas, dirSalida);
+        System.out.println(estadisticas);
+        for (String error : estadisticas.getErrores()) {
+            System.err.println(error);
+        }
+    }
+
+    /**
+     * Indica si un fichero tiene una extensión de imagen que ImageIO puede
+     * leer.
+     *
+     * @param fichero Ruta del fichero.
+     * @return true si es un fichero regular con extensión de imagen conocida.
+     */
+    private static boolean esImagen(Path fichero) {
+        if (!Files.isRegularFile(fichero)) {
+            return false;
+        }
+        String extension = getExtension(fichero);
+        for (String sufijo : ImageIO.getReaderFileSuffixes()) {
+            if (sufijo.equalsIgnoreCase(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
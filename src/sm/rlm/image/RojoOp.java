@@ -4,10 +4,6 @@
  */
 package sm.rlm.image;
 
-import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import sm.image.BufferedImageOpAdapter;
-
 /**
  * Clase que implementa una operación de resaltado del color rojo.
  *
@@ -16,12 +12,17 @@ import sm.image.BufferedImageOpAdapter;
  * píxel se mantiene tal cual. En caso contrario, se convierte a escala de
  * grises utilizando el promedio de sus componentes.
  *
- * Esta clase extiende {@code BufferedImageOpAdapter} para integrarse fácilmente
- * con operaciones de procesamiento de imagen.
+ * En las imágenes con canal alfa, el alfa de cada píxel se conserva. Las
+ * versiones anteriores, que recorrían la imagen píxel a píxel, escribían
+ * siempre alfa 0 (píxeles totalmente transparentes); en las imágenes sin alfa
+ * el resultado es el mismo que el de esas versiones.
+ *
+ * Esta clase extiende {@code MiPixelOpAdapter} para integrarse fácilmente
+ * con operaciones de procesamiento de imagen y poder procesarse por teselas.
  *
  * @author rober
  */
-public class RojoOp extends BufferedImageOpAdapter {
+public class RojoOp extends MiPixelOpAdapter {
 
     /**
      * Umbral de activación para decidir si un píxel se mantiene en color rojo o
@@ -40,57 +41,83 @@ public class RojoOp extends BufferedImageOpAdapter {
     }
 
     /**
-     * Aplica la operación de resaltado de rojo sobre una imagen.
+     * Aplica la operación de resaltado de rojo sobre un píxel.
      *
-     * Recorre cada píxel de la imagen fuente. Si la diferencia entre el valor
-     * rojo y la suma de verde y azul supera el umbral, se deja el color
-     * original. Si no, se convierte a escala de grises usando la media
-     * aritmética.
+     * Si la diferencia entre el valor rojo y la suma de verde y azul supera el
+     * umbral, se deja el color original. Si no, se convierte a escala de
+     * grises usando la media aritmética. El alfa se conserva.
      *
-     * @param src Imagen fuente sobre la que se aplica el filtro.
-     * @param dest Imagen de destino donde se escribe el resultado. Si es
-     * {@code null}, se crea una nueva.
-     * @return Imagen con el filtro aplicado.
-     * @throws NullPointerException Si la imagen fuente es {@code null}.
+     * @param argb Color del píxel fuente (0xAARRGGBB).
+     * @return Color del píxel resultante (0xAARRGGBB).
      */
     @Override
-    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        if (src == null) {
-            throw new NullPointerException("src image is null");
-        }
-        
-        if (dest == null) {
-            dest = createCompatibleDestImage(src, null);
+    public int filtrarPixel(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+
+        if ((r - g - b) > this.umbral) {
+            return argb;
         }
-        
-        WritableRaster srcRaster = src.getRaster();
-        WritableRaster destRaster = dest.getRaster();
-        
-        int[] pixelComp = new int[srcRaster.getNumBands()];
-        int[] pixelCompDest = new int[srcRaster.getNumBands()];
 
-        for (int x = 0; x < src.getWidth(); x++) {
-            for (int y = 0; y < src.getHeight(); y++) {
-                srcRaster.getPixel(x, y, pixelComp);
-                int r = pixelComp[0];
-                int g = pixelComp[1];
-                int b = pixelComp[2];
-                
-                if ((r - g - b) > this.umbral) {
-                    pixelCompDest[0] = r;
-                    pixelCompDest[1] = g;
-                    pixelCompDest[2] = b;
-                } else {
-                    int media = (r + g + b)/3;
-                    pixelCompDest[0] = media;
-                    pixelCompDest[1] = media;
-                    pixelCompDest[2] = media;
-                }
-                
-                destRaster.setPixel(x, y, pixelCompDest);
-            }
+        int media = (r + g + b) / 3;
+        return (argb & 0xFF000000) | (media << 16) | (media << 8) | media;
+    }
+
+    /**
+     * Aplica la operación sobre una fila de píxeles sin saltos condicionales.
+     *
+     * La comparación con el umbral se convierte en una máscara de bits (todo
+     * unos si el píxel se conserva) que selecciona entre el píxel original y
+     * el gris, y la división entre 3 se sustituye por una multiplicación y un
+     * desplazamiento, exacta para sumas de 0 a 765. Si la Vector API está
+     * disponible, los píxeles que caben en vectores completos se procesan con
+     * la implementación vectorial equivalente.
+     *
+     * @param src Array con los píxeles fuente.
+     * @param srcPos Posición del primer píxel fuente.
+     * @param dest Array donde se escriben los píxeles resultantes.
+     * @param destPos Posición del primer píxel de destino.
+     * @param longitud Número de píxeles a procesar.
+     * @param alfa Máscara que se aplica con OR a cada píxel leído.
+     */
+    @Override
+    protected void filtrarFila(int[] src, int srcPos, int[] dest, int destPos, int longitud, int alfa) {
+        int k = VECTORIAL ? NucleosVectoriales.rojo(src, srcPos, dest, destPos, longitud, alfa, this.umbral) : 0;
+
+        // r - g - b está en [-510, 255]: fuera de ese rango el umbral decide igual
+        int u = Math.max(-511, Math.min(255, this.umbral));
+
+        for (; k < longitud; k++) {
+            int argb = src[srcPos + k] | alfa;
+            int r = (argb >> 16) & 0xFF;
+            int g = (argb >> 8) & 0xFF;
+            int b = argb & 0xFF;
+
+            int conserva = (u - (r - g - b)) >> 31;
+            int media = ((r + g + b) * 21846) >>> 16;
+            int gris = (argb & 0xFF000000) | (media * 0x010101);
+
+            dest[destPos + k] = (argb & conserva) | (gris & ~conserva);
         }
-        
-        return dest;
+    }
+
+    /**
+     * Aplica la operación directamente sobre las muestras de una fila de una
+     * imagen de bytes entrelazados, con la implementación vectorial si la
+     * Vector API está disponible.
+     *
+     * @param src Array con las muestras fuente.
+     * @param srcPos Posición de la primera muestra del primer píxel fuente.
+     * @param dest Array donde se escriben las muestras resultantes.
+     * @param destPos Posición de la primera muestra del primer píxel de
+     * destino.
+     * @param longitud Número de píxeles de la fila.
+     * @param conAlfa true si la imagen es {@code TYPE_4BYTE_ABGR}.
+     * @return número de píxeles procesados desde el principio de la fila.
+     */
+    @Override
+    protected int filtrarFilaByte(byte[] src, int srcPos, byte[] dest, int destPos, int longitud, boolean conAlfa) {
+        return VECTORIAL ? NucleosVectoriales.rojo(src, srcPos, dest, destPos, longitud, conAlfa, this.umbral) : 0;
     }
 }
@@ -0,0 +1,173 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Color;
+
+/**
+ * Clase auxiliar para elegir de forma automática los umbrales de
+ * {@link PopArtOp} y {@link RojoOp} a partir del {@link Histograma} de la
+ * imagen, en lugar de probar valores a mano.
+ *
+ * Incluye el método de Otsu, que elige el umbral que mejor separa el
+ * histograma en dos clases (máxima varianza entre clases), y umbrales por
+ * percentil, que fijan qué proporción de píxeles queda a cada lado.
+ *
+ * @author rober
+ */
+public class UmbralAutomatico {
+
+    private UmbralAutomatico() {
+    }
+
+    /**
+     * Calcula el umbral de Otsu de un histograma.
+     *
+     * @param histograma Histograma a analizar.
+     * @return Posición t que separa las clases [0, t) y [t, n). Si el
+     * histograma no tiene al menos dos valores distintos, se devuelve la
+     * posición del primer valor no vacío más uno (0 si está vacío).
+     */
+    public static int otsu(long[] histograma) {
+        double total = 0;
+        double sumaTotal = 0;
+        for (int i = 0; i < histograma.length; i++) {
+            total += histograma[i];
+            sumaTotal += (double) i * histograma[i];
+        }
+
+        double peso0 = 0;
+        double suma0 = 0;
+        double mejorVarianza = -1;
+        int mejor = 0;
+
+        for (int t = 1; t < histograma.length; t++) {
+            peso0 += histograma[t - 1];
+            suma0 += (double) (t - 1) * histograma[t - 1];
+            double peso1 = total - peso0;
+            if (peso0 == 0) {
+                continue;
+            }
+            if (peso1 == 0) {
+                if (mejorVarianza < 0) {
+                    mejor = t;
+                }
+                break;
+            }
+
+            double media0 = suma0 / peso0;
+            double media1 = (sumaTotal - suma0) / peso1;
+            double varianza = peso0 * peso1 * (media0 - media1) * (media0 - media1);
+            if (varianza > mejorVarianza) {
+                mejorVarianza = varianza;
+                mejor = t;
+            }
+        }
+
+        return mejor;
+    }
+
+    /**
+     * Calcula un percentil de un histograma.
+     *
+     * @param histograma Histograma a analizar.
+     * @param fraccion Fracción de los datos, en [0, 1].
+     * @return Menor posición i tal que la suma de las posiciones 0 a i es al
+     * menos {@code fraccion} veces el total.
+     * @throws IllegalArgumentException si la fracción no está en [0, 1].
+     */
+    public static int percentil(long[] histograma, double fraccion) {
+        if (!(fraccion >= 0 && fraccion <= 1)) {
+            throw new IllegalArgumentException("La fracción debe estar en [0, 1]");
+        }
+
+        long total = 0;
+        for (long n : histograma) {
+            total += n;
+        }
+
+        double objetivo = fraccion * total;
+        long acumulado = 0;
+        for (int i = 0; i < histograma.length; i++) {
+            acumulado += histograma[i];
+            if (acumulado >= objetivo && acumulado > 0) {
+                return i;
+            }
+        }
+        return histograma.length - 1;
+    }
+
+    /**
+     * Crea un filtro Pop Art de dos colores con el umbral de intensidad de
+     * Otsu.
+     *
+     * @param histograma Histograma de la imagen.
+     * @param claro Color de los píxeles claros.
+     * @param oscuro Color de los píxeles oscuros.
+     * @return Filtro Pop Art configurado.
+     */
+    public static PopArtOp crearPopArtOtsu(Histograma histograma, Color claro, Color oscuro) {
+        return new PopArtOp(otsu(histograma.getIntensidad()), claro, oscuro);
+    }
+
+    /**
+     * Crea un filtro Pop Art de varios colores cuyos umbrales reparten los
+     * píxeles de la imagen en tramos de igual tamaño (por percentiles de
+     * intensidad).
+     *
+     * @param histograma Histograma de la imagen.
+     * @param colores Colores de cada tramo, del más oscuro al más claro (al
+     * menos dos).
+     * @return Filtro Pop Art configurado.
+     * @throws IllegalArgumentException si hay menos de dos colores.
+     */
+    public static PopArtOp crearPopArtPercentiles(Histograma histograma, Color[] colores) {
+        if (colores.length < 2) {
+            throw new IllegalArgumentException("Debe haber al menos dos colores");
+        }
+
+        long[] intensidad = histograma.getIntensidad();
+        int[] umbrales = new int[colores.length - 1];
+        for (int i = 0; i < umbrales.length; i++) {
+            // El umbral es la primera intensidad del tramo siguiente
+            umbrales[i] = percentil(intensidad, (double) (i + 1) / colores.length) + 1;
+            if (i > 0) {
+                umbrales[i] = Math.max(umbrales[i], umbrales[i - 1]);
+            }
+        }
+        return new PopArtOp(umbrales, colores);
+    }
+
+    /**
+     * Crea un filtro de resaltado de rojo con el umbral de Otsu del
+     * histograma de rojez (R - G - B).
+     *
+     * @param histograma Histograma de la imagen.
+     * @return Filtro de resaltado de rojo configurado.
+     */
+    public static RojoOp crearRojoOtsu(Histograma histograma) {
+        int t = otsu(histograma.getRojez());
+        // Se conservan los píxeles con R - G - B >= t - DESPLAZAMIENTO
+        return new RojoOp(t - Histograma.DESPLAZAMIENTO_ROJEZ - 1);
+    }
+
+    /**
+     * Crea un filtro de resaltado de rojo que conserva, como mucho, la
+     * fracción indicada de píxeles (los más rojos).
+     *
+     * @param histograma Histograma de la imagen.
+     * @param fraccionRoja Fracción de píxeles que se conservan en color, en
+     * [0, 1].
+     * @return Filtro de resaltado de rojo configurado.
+     * @throws IllegalArgumentException si la fracción no está en [0, 1].
+     */
+    public static RojoOp crearRojoPercentil(Histograma histograma, double fraccionRoja) {
+        if (!(fraccionRoja >= 0 && fraccionRoja <= 1)) {
+            throw new IllegalArgumentException("La fracción debe estar en [0, 1]");
+        }
+        int i = percentil(histograma.getRojez(), 1 - fraccionRoja);
+        return new RojoOp(i - Histograma.DESPLAZAMIENTO_ROJEZ);
+    }
+}
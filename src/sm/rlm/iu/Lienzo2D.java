@@ -4,16 +4,22 @@
  */
 package sm.rlm.iu;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,12 +28,15 @@ import javax.sound.sampled.Clip;
 import sm.rlm.enums.HerramientaDibujo;
 import sm.rlm.eventos.LienzoEvent;
 import sm.rlm.eventos.LienzoListener;
+import sm.rlm.graficos.DibujoPorLotes;
+import sm.rlm.graficos.IndiceEspacial;
 import sm.rlm.graficos.MiCurva;
 import sm.rlm.graficos.MiElipse;
 import sm.rlm.graficos.MiLinea;
 import sm.rlm.graficos.MiRectangulo;
 import sm.rlm.graficos.MiShape;
 import sm.rlm.graficos.MiShapeRellenable;
+import sm.rlm.image.FiltradoIncremental;
 
 /**
  * La clase Lienzo2D representa un componente de dibujo interactivo que permite
@@ -36,16 +45,35 @@ import sm.rlm.graficos.MiShapeRellenable;
  * alisado.
  *
  * Las figuras dibujadas se almacenan en una lista y se renderizan en orden. Se
- * puede seleccionar una figura y moverla usando un punto de ancla.
+ * puede seleccionar una figura y moverla usando un punto de ancla. Para
+ * localizar la figura bajo el ratón se usa un {@link IndiceEspacial}, que se
+ * mantiene al añadir, eliminar, mover o modificar figuras.
+ *
+ * Para ajustar de forma interactiva los parámetros de un filtro, el lienzo
+ * ofrece un modo de vista previa: el filtro se aplica solo a una copia de la
+ * parte visible de la imagen (opcionalmente a menor resolución) y únicamente
+ * se aplica a la imagen completa al confirmarlo.
  *
  * @author rober
  */
 public class Lienzo2D extends javax.swing.JPanel {
 
+    /**
+     * Trazo discontinuo del marco de la imagen.
+     */
+    private static final BasicStroke TRAZO_MARCO = new BasicStroke(2.0f, BasicStroke.CAP_BUTT,
+            BasicStroke.JOIN_MITER, 1.0f, new float[]{15.0f, 15.0f}, 0.0f);
+
     /**
      * Lista de figuras dibujadas en el lienzo.
      */
     private List<MiShape> vShape = new ArrayList();
+
+    /**
+     * Índice espacial de las figuras de {@link #vShape}, para localizar la
+     * figura que hay bajo el ratón sin recorrer toda la lista.
+     */
+    private IndiceEspacial indice = new IndiceEspacial();
     
     /**
      * Figura en construcción o seleccionada para manipulación.
@@ -112,11 +140,94 @@ public class Lienzo2D extends javax.swing.JPanel {
      */
     private BufferedImage img;
 
+    /**
+     * Indica si está activo el modo de vista previa de filtros.
+     */
+    private boolean vistaPrevia = false;
+
+    /**
+     * Escala de la vista previa respecto a la resolución de pantalla (1 para
+     * la misma resolución, 0.5 para la mitad, etc.).
+     */
+    private double escalaVistaPrevia = 1.0;
+
+    /**
+     * Región de la imagen (en coordenadas de la imagen) que cubre la vista
+     * previa.
+     */
+    private Rectangle regionVistaPrevia = null;
+
+    /**
+     * Copia de la región visible de la imagen, a la escala de la vista previa,
+     * sobre la que se aplican los filtros durante la vista previa.
+     */
+    private BufferedImage proxy = null;
+
+    /**
+     * Resultado de aplicar el filtro actual al proxy.
+     */
+    private BufferedImage imgVistaPrevia = null;
+
+    /**
+     * Último filtro previsualizado, para recalcular la vista previa si la
+     * imagen cambia mientras está activa.
+     */
+    private BufferedImageOp opVistaPrevia = null;
+
+    /**
+     * Filtrado que se mantiene al día con los cambios de la imagen al volcar
+     * figuras ({@code null} si no hay ninguno).
+     */
+    private FiltradoIncremental filtradoIncremental = null;
+
+    /**
+     * Dibujo por lotes con el que se pintan las figuras, o {@code null} para
+     * pintar cada figura por separado con su estilo.
+     */
+    private DibujoPorLotes dibujoPorLotes = null;
+
     /**
      * Figura actualmente seleccionada en el lienzo.
      */
     private MiShape seleccionada = null;
 
+    /**
+     * Figura que se está creando o moviendo con el ratón, o {@code null} si no
+     * hay ninguna. Mientras hay una, el resto de la escena se pinta desde las
+     * capas en caché ({@link #capaInferior} y {@link #capaSuperior}).
+     */
+    private MiShape activa = null;
+
+    /**
+     * Capa en caché con la imagen, el marco y las figuras que quedan por
+     * debajo de la figura activa.
+     */
+    private BufferedImage capaInferior = null;
+
+    /**
+     * Capa en caché, transparente, con las figuras que quedan por encima de
+     * la figura activa.
+     */
+    private BufferedImage capaSuperior = null;
+
+    /**
+     * Indica si hay figuras por encima de la figura activa, es decir, si se
+     * debe pintar {@link #capaSuperior}.
+     */
+    private boolean hayCapaSuperior = false;
+
+    /**
+     * Indica si las capas en caché reflejan el estado actual de la escena.
+     */
+    private boolean capasValidas = false;
+
+    /**
+     * Escala de la pantalla con la que se pintaron las capas en caché. En
+     * pantallas de alta densidad las capas tienen un píxel por cada píxel del
+     * dispositivo, no por cada unidad lógica del componente.
+     */
+    private AffineTransform escalaCapas = new AffineTransform();
+
     /**
      * Archivo de sonido reproducido al fijar una figura.
      */
@@ -167,7 +278,15 @@ public class Lienzo2D extends javax.swing.JPanel {
     }
     
     /**
-     * Pinta todos los elementos de la lista de figuras en el lienzo.
+     * Pinta todos los elementos de la lista de figuras en el lienzo. Si solo
+     * se debe repintar una zona (véase {@link #repintarFigura(MiShape,
+     * Rectangle)}), se omiten las figuras cuya área de dibujo queda fuera de
+     * ella.
+     *
+     * Mientras se crea o se mueve una figura, la imagen y el resto de figuras
+     * no cambian: se pintan una vez en dos capas en caché (por debajo y por
+     * encima de la figura activa, para conservar el orden) y cada fotograma
+     * consiste en copiar las capas y dibujar solo la figura activa.
      *
      * @param g el contexto gráfico proporcionado por el sistema para dibujar.
      */
@@ -175,35 +294,193 @@ public class Lienzo2D extends javax.swing.JPanel {
     public void paint(Graphics g) {
         super.paint(g);
         Graphics2D g2d = (Graphics2D) g;
-        
+
+        if (this.activa != null) {
+            AffineTransform escala = getEscalaPantalla();
+            if (!this.capasValidas || !escala.equals(this.escalaCapas)
+                    || this.capaInferior.getWidth() != escalar(getWidth(), escala.getScaleX())
+                    || this.capaInferior.getHeight() != escalar(getHeight(), escala.getScaleY())) {
+                crearCapas(escala);
+            }
+            // Las capas están a la resolución del dispositivo: se copian con
+            // la escala inversa para que cada píxel caiga en su sitio
+            AffineTransform inversa = AffineTransform.getScaleInstance(
+                    1 / escala.getScaleX(), 1 / escala.getScaleY());
+            g2d.drawImage(this.capaInferior, inversa, this);
+            if (this.img != null) {
+                aplicarClip(g2d);
+            }
+            this.activa.draw(g2d);
+            if (this.hayCapaSuperior) {
+                g2d.drawImage(this.capaSuperior, inversa, this);
+            }
+            return;
+        }
+
+        pintarFondo(g2d);
+        pintarFiguras(g2d, this.vShape);
+    }
+
+    /**
+     * Pinta la imagen, la vista previa si la hay y el marco, y limita el
+     * recorte del contexto gráfico a la imagen.
+     *
+     * @param g2d el contexto gráfico donde se pinta.
+     */
+    private void pintarFondo(Graphics2D g2d) {
         if (this.img != null) {
             g2d.drawImage(img, 0, 0, this);
+            if (this.vistaPrevia && this.imgVistaPrevia != null) {
+                Rectangle region = this.regionVistaPrevia;
+                g2d.drawImage(this.imgVistaPrevia, region.x, region.y, region.width, region.height, this);
+            }
             
             dibujarMarco(g2d);
             aplicarClip(g2d);
         }
-        
-        for(MiShape s: vShape) {
-            s.draw(g2d);
+    }
+
+    /**
+     * Pinta una lista de figuras en orden, omitiendo las que quedan fuera del
+     * recorte del contexto gráfico.
+     *
+     * @param g2d el contexto gráfico donde se pinta.
+     * @param figuras figuras a pintar, de la inferior a la superior.
+     */
+    private void pintarFiguras(Graphics2D g2d, List<MiShape> figuras) {
+        Rectangle zona = g2d.getClipBounds();
+        if (this.dibujoPorLotes != null) {
+            this.dibujoPorLotes.dibujar(g2d, figuras, zona);
+            return;
+        }
+        for(MiShape s: figuras) {
+            if (zona == null || zona.intersects(s.getAreaDibujo())) {
+                s.draw(g2d);
+            }
         }
     }
+
+    /**
+     * Pinta las capas en caché con todo lo que no es la figura activa: la
+     * inferior con el fondo del componente, la imagen y las figuras que están
+     * por debajo, y la superior con las que están por encima. Las imágenes se
+     * reutilizan mientras el tamaño del lienzo y la escala de la pantalla no
+     * cambien.
+     *
+     * @param escala escala de la pantalla, con la que se pintan las capas.
+     */
+    private void crearCapas(AffineTransform escala) {
+        int ancho = Math.max(getWidth(), 1);
+        int alto = Math.max(getHeight(), 1);
+        int anchoCapa = escalar(ancho, escala.getScaleX());
+        int altoCapa = escalar(alto, escala.getScaleY());
+        int i = this.vShape.indexOf(this.activa);
+        List<MiShape> debajo = (i < 0) ? this.vShape : this.vShape.subList(0, i);
+        List<MiShape> encima = (i < 0) ? List.of() : this.vShape.subList(i + 1, this.vShape.size());
+
+        this.capaInferior = crearCapa(this.capaInferior, anchoCapa, altoCapa, Transparency.OPAQUE);
+        Graphics2D g2d = this.capaInferior.createGraphics();
+        g2d.transform(escala);
+        g2d.setColor(getBackground());
+        g2d.fillRect(0, 0, ancho, alto);
+        // Swing pinta con el color de primer plano, que usa el marco
+        g2d.setColor(getForeground());
+        pintarFondo(g2d);
+        pintarFiguras(g2d, debajo);
+        g2d.dispose();
+
+        this.hayCapaSuperior = !encima.isEmpty();
+        if (this.hayCapaSuperior) {
+            this.capaSuperior = crearCapa(this.capaSuperior, anchoCapa, altoCapa, Transparency.TRANSLUCENT);
+            g2d = this.capaSuperior.createGraphics();
+            g2d.transform(escala);
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, ancho, alto);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            if (this.img != null) {
+                aplicarClip(g2d);
+            }
+            pintarFiguras(g2d, encima);
+            g2d.dispose();
+        }
+
+        this.escalaCapas = escala;
+        this.capasValidas = true;
+    }
+
+    /**
+     * Obtiene la escala de la pantalla en que se muestra el lienzo (por
+     * ejemplo, 2 en una pantalla de alta densidad al 200%).
+     *
+     * @return transformación con la escala de la pantalla, o la identidad si
+     * el lienzo aún no está en ninguna.
+     */
+    private AffineTransform getEscalaPantalla() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) {
+            return new AffineTransform();
+        }
+        AffineTransform t = gc.getDefaultTransform();
+        return AffineTransform.getScaleInstance(t.getScaleX(), t.getScaleY());
+    }
+
+    /**
+     * Calcula el tamaño en píxeles del dispositivo de una longitud lógica.
+     *
+     * @param longitud longitud en unidades lógicas.
+     * @param escala escala de la pantalla en esa dirección.
+     * @return longitud en píxeles del dispositivo (al menos 1).
+     */
+    private static int escalar(int longitud, double escala) {
+        return Math.max(1, (int) Math.ceil(longitud * escala));
+    }
+
+    /**
+     * Obtiene una imagen para una capa en caché, compatible con la pantalla
+     * para que su copia sea lo más rápida posible. Reutiliza la anterior si
+     * tiene el mismo tamaño y transparencia.
+     *
+     * @param actual imagen actual de la capa, o {@code null}.
+     * @param ancho ancho de la capa, en píxeles del dispositivo.
+     * @param alto alto de la capa, en píxeles del dispositivo.
+     * @param transparencia transparencia de la capa (constante de
+     * {@link Transparency}).
+     * @return imagen para la capa.
+     */
+    private BufferedImage crearCapa(BufferedImage actual, int ancho, int alto, int transparencia) {
+        if (actual != null && actual.getWidth() == ancho && actual.getHeight() == alto
+                && actual.getTransparency() == transparencia) {
+            return actual;
+        }
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            return gc.createCompatibleImage(ancho, alto, transparencia);
+        }
+        return new BufferedImage(ancho, alto, (transparencia == Transparency.OPAQUE)
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Establece la figura activa (la que se está creando o moviendo) y marca
+     * las capas en caché para volver a pintarlas.
+     *
+     * @param figura nueva figura activa, o {@code null} si no hay ninguna.
+     */
+    private void setActiva(MiShape figura) {
+        this.activa = figura;
+        this.capasValidas = false;
+    }
     
     /**
      * Retorna la figura que contiene el punto dado, buscando desde la figura
-     * superior.
+     * superior. Solo se comprueban las figuras cercanas al punto según el
+     * índice espacial.
      *
      * @param p el punto a verificar dentro de las figuras.
      * @return la figura que contiene el punto, o null si ninguna lo contiene.
      */
     private MiShape getSelectedShape(Point2D p) {
-        List<MiShape> reversedList = this.vShape.reversed();
-        for (MiShape s: reversedList) {
-            if (s.contains(p)) {
-                return s;
-            }
-        }
-        
-        return null;
+        return this.indice.getSuperior(p);
     }
     
     /**
@@ -212,14 +489,16 @@ public class Lienzo2D extends javax.swing.JPanel {
      */
     private void selectShape() {
         if (this.seleccionada != null) {
+            Rectangle antes = this.seleccionada.getAreaDibujo();
             this.seleccionada.setSelected(false);
+            repaint(antes);
         }
         
         this.seleccionada = this.forma;
         if (this.seleccionada != null){
             this.seleccionada.setSelected(true);
+            repaint(this.seleccionada.getAreaDibujo());
         }
-        repaint();
     }
     
     /**
@@ -227,9 +506,10 @@ public class Lienzo2D extends javax.swing.JPanel {
      */
     private void unselectShape() {
         if (this.seleccionada != null) {
+            Rectangle antes = this.seleccionada.getAreaDibujo();
             this.seleccionada.setSelected(false);
             this.seleccionada = null;
-            repaint();
+            repaint(antes);
         }
     }
     
@@ -288,7 +568,9 @@ public class Lienzo2D extends javax.swing.JPanel {
     
     /**
      * Dibuja una figura sobre el buffer de imagen y la elimina de la lista de
-     * figuras activas. Reproduce un sonido de confirmación si está disponible.
+     * figuras activas. Si hay un filtrado incremental asociado, vuelve a
+     * filtrar solo la zona de la figura. Reproduce un sonido de confirmación
+     * si está disponible.
      *
      * @param figura La figura a volcar en la imagen final.
      */
@@ -297,9 +579,17 @@ public class Lienzo2D extends javax.swing.JPanel {
 
         if (g2d != null) {
             figura.draw(g2d);
+            if (this.opVistaPrevia != null && figura.getAreaDibujo().intersects(this.regionVistaPrevia)) {
+                refrescarVistaPrevia();
+            }
+            if (this.filtradoIncremental != null) {
+                this.filtradoIncremental.marcarSucia(figura.getAreaDibujo());
+                this.filtradoIncremental.actualizar();
+            }
             this.play(sonidoFijar);
             this.vShape.remove(figura);
-            repaint();
+            this.indice.eliminar(figura);
+            repaint(figura.getAreaDibujo());
         }
     }
 
@@ -311,10 +601,23 @@ public class Lienzo2D extends javax.swing.JPanel {
      */
     private void borrarFigura(MiShape figura) {
         this.vShape.remove(figura);
+        this.indice.eliminar(figura);
         this.play(sonidoEliminar);
-        repaint();
+        repaint(figura.getAreaDibujo());
     }
     
+    /**
+     * Repinta solo la zona afectada por el cambio de una figura: la unión de
+     * su área de dibujo antes del cambio y la actual, que incluyen el grosor
+     * del trazo y el marco de selección.
+     *
+     * @param figura Figura modificada.
+     * @param antes Área de dibujo de la figura antes del cambio.
+     */
+    private void repintarFigura(MiShape figura, Rectangle antes) {
+        repaint(antes.union(figura.getAreaDibujo()));
+    }
+
     /**
      * Establece el área de recorte del contexto gráfico al tamaño de la imagen.
      *
@@ -331,11 +634,133 @@ public class Lienzo2D extends javax.swing.JPanel {
      * @param g2d El contexto gráfico donde se dibujará el marco.
      */
     private void dibujarMarco(Graphics2D g2d) {
-        float[] patronDiscontinuidad = {15.0f, 15.0f};
-        g2d.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1.0f, patronDiscontinuidad, 0.0f));
+        g2d.setStroke(TRAZO_MARCO);
         g2d.drawRect(0, 0, img.getWidth(), img.getHeight());
     }
     
+    /**
+     * Activa el modo de vista previa de filtros. A partir de este momento,
+     * {@link #vistaPrevia(BufferedImageOp)} aplica el filtro solo a la parte
+     * visible de la imagen, de modo que el tiempo de respuesta no depende del
+     * tamaño de la imagen.
+     */
+    public void iniciarVistaPrevia() {
+        this.vistaPrevia = true;
+        this.proxy = null;
+        this.imgVistaPrevia = null;
+        this.opVistaPrevia = null;
+    }
+
+    /**
+     * Muestra el resultado de aplicar un filtro sobre la parte visible de la
+     * imagen, sin modificar la imagen. Si el modo de vista previa no estaba
+     * activo, se activa.
+     *
+     * El resultado de la vista previa anterior se reutiliza como imagen de
+     * destino, por lo que el filtro debe producir imágenes del mismo tipo que
+     * la fuente (como todos los de {@code sm.rlm.image}).
+     *
+     * @param op Filtro a previsualizar.
+     */
+    public void vistaPrevia(BufferedImageOp op) {
+        if (this.img == null) {
+            return;
+        }
+        if (!this.vistaPrevia) {
+            iniciarVistaPrevia();
+        }
+
+        Rectangle region = getVisibleRect().intersection(new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+        if (region.isEmpty()) {
+            return;
+        }
+        if (this.proxy == null || !region.equals(this.regionVistaPrevia)) {
+            crearProxy(region);
+        }
+
+        this.opVistaPrevia = op;
+        this.imgVistaPrevia = op.filter(this.proxy, this.imgVistaPrevia);
+        repaint(region);
+    }
+
+    /**
+     * Vuelve a calcular la vista previa en curso a partir del contenido
+     * actual de la imagen, con el último filtro previsualizado. No hace nada
+     * si no hay ninguna vista previa activa.
+     *
+     * El proxy de la vista previa es una copia de la imagen (salvo a escala
+     * 1), por lo que se debe llamar a este método si la imagen se modifica
+     * directamente durante una vista previa. El lienzo lo hace por sí mismo
+     * al volcar una figura en la imagen.
+     */
+    public void refrescarVistaPrevia() {
+        if (!this.vistaPrevia || this.opVistaPrevia == null) {
+            return;
+        }
+        this.proxy = null;
+        vistaPrevia(this.opVistaPrevia);
+    }
+
+    /**
+     * Aplica un filtro a la imagen completa y termina el modo de vista previa.
+     *
+     * @param op Filtro a aplicar, normalmente el último previsualizado.
+     */
+    public void confirmarVistaPrevia(BufferedImageOp op) {
+        terminarVistaPrevia();
+        if (this.img != null) {
+            this.img = op.filter(this.img, null);
+            this.filtradoIncremental = null;
+        }
+        repaint();
+    }
+
+    /**
+     * Termina el modo de vista previa sin modificar la imagen.
+     */
+    public void cancelarVistaPrevia() {
+        terminarVistaPrevia();
+        repaint();
+    }
+
+    /**
+     * Desactiva el modo de vista previa y libera las imágenes auxiliares.
+     */
+    private void terminarVistaPrevia() {
+        this.vistaPrevia = false;
+        this.proxy = null;
+        this.imgVistaPrevia = null;
+        this.regionVistaPrevia = null;
+        this.opVistaPrevia = null;
+    }
+
+    /**
+     * Crea el proxy de la vista previa a partir de una región de la imagen.
+     * A escala 1 el proxy comparte los datos de la imagen, sin copiarlos.
+     *
+     * @param region Región de la imagen que se previsualiza.
+     */
+    private void crearProxy(Rectangle region) {
+        this.regionVistaPrevia = region;
+        this.imgVistaPrevia = null;
+
+        if (this.escalaVistaPrevia >= 1.0) {
+            this.proxy = img.getSubimage(region.x, region.y, region.width, region.height);
+            return;
+        }
+
+        int ancho = Math.max(1, (int) Math.ceil(region.width * this.escalaVistaPrevia));
+        int alto = Math.max(1, (int) Math.ceil(region.height * this.escalaVistaPrevia));
+        int tipo = (img.getType() != BufferedImage.TYPE_CUSTOM) ? img.getType() : BufferedImage.TYPE_INT_ARGB;
+
+        this.proxy = new BufferedImage(ancho, alto, tipo);
+        Graphics2D g2d = this.proxy.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(img, 0, 0, ancho, alto,
+                region.x, region.y, region.x + region.width, region.y + region.height, null);
+        g2d.dispose();
+    }
+
     /**
      * Reproduce un archivo de sonido utilizando el sistema de audio.
      *
@@ -366,6 +791,7 @@ public class Lienzo2D extends javax.swing.JPanel {
         Point2D nuevaPos = new Point2D.Double(posActual.getX() + dx, posActual.getY() + dy);
 
         this.forma.setLocation(nuevaPos);
+        this.indice.actualizar(this.forma);
 
         this.puntoAncla = pEvt;
     }
@@ -438,17 +864,110 @@ public class Lienzo2D extends javax.swing.JPanel {
 
     /**
      * Establece la imagen base del lienzo. También ajusta el tamaño preferido
-     * del componente.
+     * del componente, cancela la vista previa en curso, si la hay, y
+     * desasocia el filtrado incremental si la imagen cambia.
      *
      * @param img la imagen a establecer como fondo del lienzo.
      */
     public void setImg(BufferedImage img) {
+        terminarVistaPrevia();
+        if (img != this.img) {
+            this.filtradoIncremental = null;
+        }
         this.img = img;
         if (img != null) {
             setPreferredSize(new Dimension(img.getWidth(), img.getHeight()));
         }
     }
 
+    /**
+     * Indica si está activo el modo de vista previa de filtros.
+     *
+     * @return true si hay una vista previa en curso, false en caso contrario.
+     */
+    public boolean isVistaPrevia() {
+        return vistaPrevia;
+    }
+
+    /**
+     * Obtiene la escala de la vista previa respecto a la resolución de
+     * pantalla.
+     *
+     * @return la escala de la vista previa.
+     */
+    public double getEscalaVistaPrevia() {
+        return escalaVistaPrevia;
+    }
+
+    /**
+     * Establece la escala de la vista previa respecto a la resolución de
+     * pantalla. Valores menores que 1 reducen aún más el coste de cada
+     * actualización, a cambio de una vista previa menos nítida. Si hay una
+     * vista previa en curso, se vuelve a calcular con la nueva escala.
+     *
+     * @param escalaVistaPrevia escala en el intervalo (0, 1].
+     * @throws IllegalArgumentException si la escala no está en (0, 1].
+     */
+    public void setEscalaVistaPrevia(double escalaVistaPrevia) {
+        if (!(escalaVistaPrevia > 0 && escalaVistaPrevia <= 1)) {
+            throw new IllegalArgumentException("La escala debe estar en el intervalo (0, 1]");
+        }
+        this.escalaVistaPrevia = escalaVistaPrevia;
+        this.proxy = null;
+        refrescarVistaPrevia();
+    }
+
+    /**
+     * Obtiene el filtrado incremental asociado a la imagen del lienzo.
+     *
+     * @return el filtrado incremental, o {@code null} si no hay ninguno.
+     */
+    public FiltradoIncremental getFiltradoIncremental() {
+        return filtradoIncremental;
+    }
+
+    /**
+     * Asocia un filtrado incremental a la imagen del lienzo. Al volcar una
+     * figura en la imagen, se vuelve a filtrar solo la zona que ocupa. Su
+     * imagen fuente debe ser la del lienzo ({@link #getImg()}).
+     *
+     * @param filtradoIncremental filtrado incremental, o {@code null} para no
+     * mantener ninguno.
+     * @throws IllegalArgumentException si la fuente del filtrado no es la
+     * imagen del lienzo.
+     */
+    public void setFiltradoIncremental(FiltradoIncremental filtradoIncremental) {
+        if (filtradoIncremental != null && filtradoIncremental.getSrc() != this.img) {
+            throw new IllegalArgumentException("La fuente del filtrado debe ser la imagen del lienzo");
+        }
+        this.filtradoIncremental = filtradoIncremental;
+    }
+
+    /**
+     * Obtiene el dibujo por lotes con el que se pintan las figuras.
+     *
+     * @return el dibujo por lotes, o {@code null} si cada figura se pinta por
+     * separado.
+     */
+    public DibujoPorLotes getDibujoPorLotes() {
+        return dibujoPorLotes;
+    }
+
+    /**
+     * Establece el modo de pintar las figuras. Con un {@link DibujoPorLotes},
+     * las figuras consecutivas con el mismo estilo se pintan sin volver a
+     * establecer el estado del contexto gráfico, lo que acelera el pintado de
+     * escenas con muchas figuras.
+     *
+     * @param dibujoPorLotes dibujo por lotes, o {@code null} para pintar cada
+     * figura por separado.
+     */
+    public void setDibujoPorLotes(DibujoPorLotes dibujoPorLotes) {
+        this.dibujoPorLotes = dibujoPorLotes;
+        this.capasValidas = false;
+        repaint();
+    }
+
     /**
      * Obtiene la herramienta de dibujo actual.
      *
@@ -819,26 +1338,33 @@ public class Lienzo2D extends javax.swing.JPanel {
             }
             if (!((this.forma instanceof MiCurva) && (this.pasosCurva%2 == 0))) {   
                 this.vShape.add(forma);
+                this.indice.insertar(forma);
                 this.notifyShapeAddedEvent(new LienzoEvent(this, forma));
             }
         }
+        this.setActiva(this.forma);
     }//GEN-LAST:event_formMousePressed
 
     private void formMouseDragged(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_formMouseDragged
         if (this.mover) {
             if (this.forma != null && this.puntoAncla != null) {
+                Rectangle antes = this.forma.getAreaDibujo();
                 this.moverFiguraConAncla(evt.getPoint());
+                this.repintarFigura(this.forma, antes);
             }
         } else {
+            Rectangle antes = this.forma.getAreaDibujo();
             this.forma.updateShape(evt.getPoint());
+            this.indice.actualizar(this.forma);
+            this.repintarFigura(this.forma, antes);
         }
-        this.repaint();
     }//GEN-LAST:event_formMouseDragged
 
     private void formMouseReleased(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_formMouseReleased
         if (this.mover) {
             this.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
         }
+        this.setActiva(null);
     }//GEN-LAST:event_formMouseReleased
 
     private void formMouseMoved(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_formMouseMoved
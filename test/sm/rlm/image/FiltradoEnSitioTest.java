@@ -0,0 +1,112 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Comprueba que filtrar una imagen en el sitio ({@code op.filter(img, img)})
+ * da el mismo resultado que filtrarla sobre otra imagen, en las operaciones
+ * que lo admiten.
+ *
+ * @author rober
+ */
+public class FiltradoEnSitioTest {
+
+    /**
+     * Tipos de imagen probados: los dos empaquetados en enteros y uno de
+     * bytes entrelazados.
+     */
+    private static final int[] TIPOS = {
+        BufferedImage.TYPE_INT_RGB,
+        BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_3BYTE_BGR
+    };
+
+    // Dimensiones impares, para que las filas no sean múltiplo del número
+    // de píxeles que procesan a la vez los recorridos vectoriales
+    private static final int ANCHO = 97;
+    private static final int ALTO = 61;
+
+    @Test
+    public void testRojoOp() {
+        comprobarEnSitio(new RojoOp(20));
+    }
+
+    @Test
+    public void testPopArtOp() {
+        comprobarEnSitio(new PopArtOp(new int[]{60, 130, 200},
+                new Color[]{Color.BLACK, Color.RED, Color.YELLOW, Color.WHITE}));
+    }
+
+    @Test
+    public void testPosterizarOp() {
+        comprobarEnSitio(new PosterizarOp(4));
+    }
+
+    @Test
+    public void testPosterizarOpConTramado() {
+        comprobarEnSitio(new PosterizarOp(4, true));
+    }
+
+    @Test
+    public void testModificarTonoOp() {
+        comprobarEnSitio(new ModificarTonoOp(Color.RED, 60, 120));
+    }
+
+    /**
+     * Filtra una imagen aleatoria de cada tipo en el sitio y sobre una imagen
+     * nueva, y comprueba que las muestras resultantes son iguales.
+     *
+     * @param op Operación a comprobar.
+     */
+    private static void comprobarEnSitio(BufferedImageOp op) {
+        for (int tipo : TIPOS) {
+            BufferedImage src = crearImagen(tipo, 1234);
+            BufferedImage esperada = op.filter(src, new BufferedImage(ANCHO, ALTO, tipo));
+
+            BufferedImage img = crearImagen(tipo, 1234);
+            BufferedImage resultado = op.filter(img, img);
+
+            assertSame(img, resultado);
+            assertArrayEquals(op.getClass().getSimpleName() + ", tipo " + tipo,
+                    getMuestras(esperada), getMuestras(resultado));
+        }
+    }
+
+    /**
+     * Crea una imagen con colores aleatorios (y alfa aleatorio si lo tiene).
+     *
+     * @param tipo Tipo de la imagen.
+     * @param semilla Semilla de los colores, para repetir la misma imagen.
+     * @return La imagen creada.
+     */
+    static BufferedImage crearImagen(int tipo, long semilla) {
+        Random rnd = new Random(semilla);
+        BufferedImage img = new BufferedImage(ANCHO, ALTO, tipo);
+        for (int y = 0; y < ALTO; y++) {
+            for (int x = 0; x < ANCHO; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Obtiene todas las muestras de una imagen.
+     *
+     * @param img Imagen.
+     * @return Muestras de todas las bandas, fila a fila.
+     */
+    static int[] getMuestras(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0, img.getWidth(), img.getHeight(), (int[]) null);
+    }
+}
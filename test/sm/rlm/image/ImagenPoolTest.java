@@ -0,0 +1,106 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+package sm.rlm.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Pruebas de {@link ImagenPool} y de su uso como destino de las operaciones.
+ *
+ * @author rober
+ */
+public class ImagenPoolTest {
+
+    @Test
+    public void testReutilizaMismoTamanoYTipo() {
+        ImagenPool pool = new ImagenPool();
+        BufferedImage img = pool.obtener(40, 30, BufferedImage.TYPE_INT_RGB);
+        pool.devolver(img);
+
+        assertSame(img, pool.obtener(40, 30, BufferedImage.TYPE_INT_RGB));
+        assertEquals(0, pool.getNumLibres());
+    }
+
+    @Test
+    public void testNoReutilizaOtroTamanoOTipo() {
+        ImagenPool pool = new ImagenPool();
+        BufferedImage img = pool.obtener(40, 30, BufferedImage.TYPE_INT_RGB);
+        pool.devolver(img);
+
+        assertNotSame(img, pool.obtener(40, 30, BufferedImage.TYPE_INT_ARGB));
+        assertNotSame(img, pool.obtener(41, 30, BufferedImage.TYPE_INT_RGB));
+        assertNotSame(img, pool.obtener(40, 31, BufferedImage.TYPE_INT_RGB));
+        assertEquals(1, pool.getNumLibres());
+    }
+
+    @Test
+    public void testObtenerCompatibleReutiliza() {
+        ImagenPool pool = new ImagenPool();
+        BufferedImage img = pool.obtener(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        pool.devolver(img);
+
+        assertSame(img, pool.obtenerCompatible(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR)));
+    }
+
+    @Test
+    public void testLimitaLibresYNoDuplica() {
+        ImagenPool pool = new ImagenPool(2);
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        pool.devolver(img);
+        pool.devolver(img);
+        assertEquals(1, pool.getNumLibres());
+
+        pool.devolver(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        pool.devolver(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(2, pool.getNumLibres());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTipoNoAdmitido() {
+        new ImagenPool().obtener(10, 10, BufferedImage.TYPE_CUSTOM);
+    }
+
+    /**
+     * Una imagen del almacén conserva su contenido anterior. Al usarla como
+     * destino de una región, lo que queda fuera de la región debe quedar a
+     * cero, igual que en una imagen nueva.
+     */
+    @Test
+    public void testDestinoReutilizadoSeLimpiaFueraDeLaRegion() {
+        ImagenPool pool = new ImagenPool();
+        RojoOp op = new RojoOp(20);
+        op.setPoolImagenes(pool);
+
+        BufferedImage src = FiltradoEnSitioTest.crearImagen(BufferedImage.TYPE_INT_ARGB, 99);
+        int ancho = src.getWidth();
+        int alto = src.getHeight();
+
+        // Imagen usada antes, con todas las muestras a 255
+        BufferedImage usada = pool.obtener(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        int[] llenas = new int[ancho * alto * 4];
+        Arrays.fill(llenas, 255);
+        usada.getRaster().setPixels(0, 0, ancho, alto, llenas);
+        pool.devolver(usada);
+
+        Rectangle roi = new Rectangle(10, 7, 50, 30);
+        BufferedImage resultado = op.filter(src, null, roi);
+        BufferedImage esperada = op.filter(src, new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB), roi);
+
+        assertSame(usada, resultado);
+        assertArrayEquals(FiltradoEnSitioTest.getMuestras(esperada), FiltradoEnSitioTest.getMuestras(resultado));
+
+        WritableRaster raster = resultado.getRaster();
+        assertArrayEquals(new int[4], raster.getPixel(0, 0, (int[]) null));
+        assertArrayEquals(new int[4], raster.getPixel(roi.x + roi.width, roi.y, (int[]) null));
+    }
+}